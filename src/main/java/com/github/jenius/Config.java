@@ -4,26 +4,59 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
-record Config(boolean force, boolean watch, boolean serve, Path dir, Path dest, Path privateDest, Path template) {
+record Config(boolean force, boolean watch, boolean serve, int jobs, Path dir, Path dest, Path privateDest, Path template) {
   private static final class Option {
     private boolean force;
     private boolean watch;
     private boolean serve;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+  }
+
+  private static int parseJobs(String[] args, int index) {
+    if (index == args.length) {
+      return usage();
+    }
+    int jobs;
+    try {
+      jobs = Integer.parseInt(args[index]);
+    } catch (NumberFormatException _) {
+      return usage();
+    }
+    if (jobs < 1) {
+      return usage();
+    }
+    return jobs;
   }
 
   private static void parseArgs(String[] args, List<Path> files, Option option) {
-    for(String arg : args) {
+    for(var i = 0; i < args.length; i++) {
+      var arg = args[i];
       switch (arg) {
         case "--force" -> option.force = true;
         case "--watch" -> option.watch = true;
         case "--serve" -> option.serve = true;
+        case "--jobs" -> option.jobs = parseJobs(args, ++i);
         default -> files.add(Path.of(arg));
       }
     }
   }
 
   private static Config newConfig(Option option, Path dir, Path dest, Path privateDest, Path template) {
-    return new Config(option.force, option.watch, option.serve, dir, dest, privateDest, template);
+    return new Config(option.force, option.watch, option.serve, option.jobs, dir, dest, privateDest, template);
+  }
+
+  private static int usage() {
+    System.err.println("""
+        jenius [options] sourceDir destinationDir [privateDir] template.html
+        
+          options:
+            --force generate all files (independently of if a source file is updated)
+            --watch wait and generate in loop when at least one of the source files change
+            --serve run an http server on port 8080 to see the destinationDir (or the privateDir)
+            --jobs N generate N files in parallel (default to the number of processors)
+        """);
+    System.exit(1);
+    throw new AssertionError();
   }
 
   public static Config parseConfig(String[] args) {
@@ -34,15 +67,7 @@ record Config(boolean force, boolean watch, boolean serve, Path dir, Path dest,
       case 3 -> newConfig(option, files.get(0), files.get(1), null, files.get(2));
       case 4 -> newConfig(option, files.get(0), files.get(1), files.get(2), files.get(3));
       default -> {
-        System.err.println("""
-            jenius [options] sourceDir destinationDir [privateDir] template.html
-            
-              options:
-                --force generate all files (independently of if a source file is updated)
-                --watch wait and generate in loop when at least one of the source files change
-                --serve run an http server on port 8080 to see the destinationDir (or the privateDir)
-            """);
-        System.exit(1);
+        usage();
         throw new AssertionError();
       }
     };
@@ -58,5 +83,6 @@ record Config(boolean force, boolean watch, boolean serve, Path dir, Path dest,
     if (force) {
       System.out.println("INFO config force: true");
     }
+    System.out.println("INFO config jobs: " + jobs);
   }
 }
\ No newline at end of file
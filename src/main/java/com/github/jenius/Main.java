@@ -1,16 +1,22 @@
 package com.github.jenius;
 
 import com.github.jenius.component.Node;
+import com.github.jenius.component.Template;
 import com.github.jenius.component.XML;
+import com.github.jenius.talc.Dependency;
 import com.github.jenius.talc.DocumentManager;
 import com.github.jenius.talc.Generator;
+import com.github.jenius.talc.Manifest;
 import com.github.jenius.talc.Plan;
 import com.github.jenius.talc.PlanFactory;
 import com.github.jenius.talc.Status;
+import com.github.jenius.talc.SummaryIndex;
 import com.sun.net.httpserver.SimpleFileServer;
 import com.sun.net.httpserver.SimpleFileServer.OutputLevel;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.file.FileSystems;
@@ -18,12 +24,27 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import static java.util.stream.Collectors.toSet;
 
 public class Main {
@@ -49,6 +70,7 @@ public class Main {
           case REMOVED -> {
             try {
               Files.delete(status.destFile());
+              plan.manifest(status.kind()).ifPresent(manifest -> manifest.remove(status.destFile()));
             } catch (IOException e) {
               System.err.println("i/o error " + e.getMessage());
               if (ioException == null) {
@@ -66,9 +88,104 @@ public class Main {
     }
   }
 
-  private static void generateFiles(Generator generator, Plan plan) throws IOException {
+  // a page with a public and a private version has a private status, both versions are generated at once
+  private record FileTask(Path path, Status status, Status privateStatus) {}
+
+  // write in a hidden temporary file first, so a destination file is never half-written
+  private static Path tmpFile(Status status) {
+    var destFile = status.destFile();
+    return destFile.resolveSibling("." + destFile.getFileName() + ".tmp");
+  }
+
+  private static void updateManifest(Generator generator, Plan plan, Path path, Status status, Set<Dependency> dependencies) throws IOException {
+    var manifestOpt = plan.manifest(status.kind());
+    if (manifestOpt.isPresent()) {
+      manifestOpt.orElseThrow().update(path, status.destFile(), dependencies, generator.manager());
+    }
+  }
+
+  private static void generateFile(Generator generator, Path template, Plan plan, FileTask task) throws IOException {
+    var path = task.path;
+    var status = task.status;
+    var destFile = status.destFile();
+    var dependencies = new LinkedHashSet<Dependency>();
+    var tmpFile = tmpFile(status);
+    try {
+      if (!path.getFileName().toString().endsWith(".xumlv")) {
+        Files.copy(path, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        dependencies.addAll(generator.generate(path, tmpFile, status.kind() == Status.Kind.PRIVATE));
+        dependencies.add(new Dependency(Dependency.Kind.CONTENT, template));
+      }
+      Files.move(tmpFile, destFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+    updateManifest(generator, plan, path, status, dependencies);
+  }
+
+  // the public and the private pages are rendered in a single pass
+  private static void generateFiles(Generator generator, Path template, Plan plan, Path path, Status publicStatus, Status privateStatus) throws IOException {
+    var publicTmpFile = tmpFile(publicStatus);
+    var privateTmpFile = tmpFile(privateStatus);
+    Map<Status.Kind, Set<Dependency>> dependencyMap;
+    try {
+      dependencyMap = generator.generate(path, publicTmpFile, privateTmpFile);
+      Files.move(publicTmpFile, publicStatus.destFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      Files.move(privateTmpFile, privateStatus.destFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(publicTmpFile);
+      Files.deleteIfExists(privateTmpFile);
+    }
+    for (var status : List.of(publicStatus, privateStatus)) {
+      var dependencies = new LinkedHashSet<>(dependencyMap.get(status.kind()));
+      dependencies.add(new Dependency(Dependency.Kind.CONTENT, template));
+      updateManifest(generator, plan, path, status, dependencies);
+    }
+  }
+
+  private static void generateTask(Generator generator, Path template, Plan plan, FileTask task) throws IOException {
+    if (task.privateStatus == null) {
+      generateFile(generator, template, plan, task);
+      return;
+    }
+    generateFiles(generator, template, plan, task.path, task.status, task.privateStatus);
+  }
+
+  private static String taskMessage(Path path, Status status) {
+    if (!path.getFileName().toString().endsWith(".xumlv")) {
+      return "copy to " + status.destFile();
+    }
+    return "generate " + status.destFile() + " " + status.state();
+  }
+
+  private static String taskMessage(FileTask task) {
+    if (task.privateStatus == null) {
+      return taskMessage(task.path, task.status);
+    }
+    return taskMessage(task.path, task.status) + "\n" + taskMessage(task.path, task.privateStatus);
+  }
+
+  // a page generated both as public and as private is a single task
+  private static void addPageTasks(Path path, List<Status> pageStatuses, List<FileTask> tasks) {
+    var publicStatus = pageStatuses.stream().filter(status -> status.kind() == Status.Kind.PUBLIC).findFirst();
+    var privateStatus = pageStatuses.stream().filter(status -> status.kind() == Status.Kind.PRIVATE).findFirst();
+    if (publicStatus.isPresent() && privateStatus.isPresent() && pageStatuses.size() == 2) {
+      tasks.add(new FileTask(path, publicStatus.orElseThrow(), privateStatus.orElseThrow()));
+      return;
+    }
+    for (var status : pageStatuses) {
+      tasks.add(new FileTask(path, status, null));
+    }
+  }
+
+  // a cancelled generation stops between two files and throws a CancellationException
+  private static void generateFiles(Generator generator, Path template, Plan plan, int jobs, BooleanSupplier cancelled) throws IOException {
+    // create the directories first, so the files can be generated in any order
+    var tasks = new ArrayList<FileTask>();
     for (var entry : plan.statusMap().entrySet()) {
       var path = entry.getKey();
+      var pageStatuses = new ArrayList<Status>();
       for (var status : entry.getValue()) {
         var state = status.state();
         switch (state) {
@@ -80,43 +197,132 @@ public class Main {
               Files.createDirectories(destFile);
               continue;
             }
-            var pathname = path.getFileName().toString();
-            if (!pathname.endsWith(".xumlv")) {
-              System.out.println("copy to " + destFile);
-              Files.copy(path, destFile, StandardCopyOption.REPLACE_EXISTING);
+            if (path.getFileName().toString().endsWith(".xumlv")) {
+              pageStatuses.add(status);
               continue;
             }
-            System.out.println("generate " + destFile + " " + state);
-            generator.generate(path, destFile, status.kind() == Status.Kind.PRIVATE);
+            tasks.add(new FileTask(path, status, null));
+          }
+        }
+      }
+      addPageTasks(path, pageStatuses, tasks);
+    }
+
+    // generate the files in parallel, but report in the order of the plan
+    IOException ioException = null;
+    try(var executor = Executors.newFixedThreadPool(jobs)) {
+      var futures = new ArrayList<Future<?>>();
+      for (var task : tasks) {
+        futures.add(executor.submit(() -> {
+          if (cancelled.getAsBoolean()) {
+            throw new CancellationException();
+          }
+          generateTask(generator, template, plan, task);
+          return null;
+        }));
+      }
+      for (var i = 0; i < tasks.size(); i++) {
+        if (cancelled.getAsBoolean()) {
+          throw new CancellationException();
+        }
+        System.out.println(taskMessage(tasks.get(i)));
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException e) {
+          switch (e.getCause()) {
+            case IOException cause -> {
+              System.err.println("i/o error " + cause.getMessage());
+              if (ioException == null) {
+                ioException = cause;
+              } else {
+                ioException.addSuppressed(cause);
+              }
+            }
+            case RuntimeException cause -> throw cause;
+            case Error cause -> throw cause;
+            case Throwable cause -> throw new UndeclaredThrowableException(cause);
           }
+        } catch (InterruptedException e) {
+          executor.shutdownNow();
+          Thread.currentThread().interrupt();
+          throw (IOException) new InterruptedIOException().initCause(e);
         }
       }
     }
+    if (ioException != null) {
+      throw ioException;
+    }
   }
 
-  private static Plan executePlan(PlanFactory planFactory, Path dir, Path dest, Path privateDest, Path template) throws IOException {
-    Node templateNode;
+  private static Node readTemplate(Path template) throws IOException {
     try(var reader = Files.newBufferedReader(template)) {
-      templateNode = XML.transform(reader);
+      return XML.transform(reader);
     }
+  }
 
-    // do a diff between dir, dest and private dest
-    var plan = planFactory.diff(dir, dest, privateDest);
-    plan.remove(template);  // skip template
+  // the compiled template, the parsed documents and the manifests (privateManifest can be null),
+  // kept between two generations in watch mode
+  private record WarmState(Template compiledTemplate, SummaryIndex summaryIndex, DocumentManager manager,
+                           Manifest manifest, Manifest privateManifest) {
+    static WarmState load(Path dir, Path dest, Path privateDest, Path template) throws IOException {
+      var compiledTemplate = Generator.compile(readTemplate(template));
+      // the summaries of the documents that have not changed are not parsed again
+      var summaryIndex = SummaryIndex.load(dest, dir);
+      var manifest = Manifest.load(dest, dir);
+      var privateManifest = privateDest == null ? null : Manifest.load(privateDest, dir);
+      return new WarmState(compiledTemplate, summaryIndex, new DocumentManager(dir, summaryIndex), manifest, privateManifest);
+    }
 
-    if (plan.statusMap().isEmpty()) {
-      System.out.println("nothing to do !");
-      return plan;
+    WarmState invalidate(Path template, Set<Path> changedPaths) throws IOException {
+      for (var path : changedPaths) {
+        manager.invalidate(path);
+        manager.invalidate(path.toAbsolutePath().normalize());  // the manifests store the template as an absolute path
+      }
+      var templatePath = template.toAbsolutePath().normalize();
+      if (changedPaths.stream().anyMatch(path -> path.toAbsolutePath().normalize().equals(templatePath))) {
+        return new WarmState(Generator.compile(readTemplate(template)), summaryIndex, manager, manifest, privateManifest);
+      }
+      return this;
     }
+  }
 
-    // remove supplementary files in dest
-    deleteFiles(plan);
+  private static void executePlan(Plan plan, int jobs, Path template, WarmState state, BooleanSupplier cancelled) throws IOException {
+    var manager = state.manager;
+    try {
+      plan.remove(template);  // skip template
 
-    // generates modified files in dest
-    var manager = new DocumentManager(dir);
-    var generator = new Generator(manager, Main::mapping, templateNode);
-    generateFiles(generator, plan);
-    return plan;
+      if (plan.statusMap().isEmpty()) {
+        System.out.println("nothing to do !");
+        return;
+      }
+
+      // the file system events may arrive after the files have been modified
+      for(var path : plan.statusMap().keySet()) {
+        manager.invalidateIfModified(path);
+      }
+
+      try {
+        // remove supplementary files in dest
+        deleteFiles(plan);
+
+        // generates modified files in dest
+        var generator = new Generator(manager, Main::mapping, state.compiledTemplate);
+        generateFiles(generator, template, plan, jobs, cancelled);
+      } finally {
+        saveManifests(plan);
+      }
+    } finally {
+      state.summaryIndex.save();
+    }
+  }
+
+  private static void saveManifests(Plan plan) throws IOException {
+    for(var kind : Status.Kind.values()) {
+      var manifestOpt = plan.manifest(kind);
+      if (manifestOpt.isPresent()) {
+        manifestOpt.orElseThrow().save();
+      }
+    }
   }
 
   private static Set<Path> scanDirectoriesToWatch(Path dir) throws IOException {
@@ -144,12 +350,67 @@ public class Main {
     return directories;
   }
 
-  private static void watch(boolean force, Path dir, Path dest, Path privateDest, Path template) throws IOException {
+  // returns false if some events were lost
+  private static boolean collectChangedPaths(WatchKey key, Set<Path> changedPaths) {
+    var directory = (Path) key.watchable();
+    for(var event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        return false;
+      }
+      changedPaths.add(directory.resolve((Path) event.context()));
+    }
+    return true;
+  }
+
+  // an editor may write a file several times in a row, so wait until no event arrives during this window
+  private static final long DEBOUNCE_MILLIS = 100;
+
+  // returns the changed paths, or an empty optional if some events were lost
+  private static Optional<Set<Path>> waitForChanges(WatchService watchService) throws InterruptedException {
+    var changedPaths = new HashSet<Path>();
+    var modifiedDirectories = new LinkedHashSet<Object>();
+    var complete = true;
+    var key = watchService.take();
+    while(key != null) {
+      modifiedDirectories.add(key.watchable());
+      complete &= collectChangedPaths(key, changedPaths);
+      key.reset();  // continue to watch the corresponding directory
+      key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    modifiedDirectories.forEach(directory -> System.out.println(directory + " is modified"));
+    return complete ? Optional.of(changedPaths) : Optional.empty();
+  }
+
+  // returns true if the build has completed, false if it has been cancelled or has failed
+  private static boolean awaitBuild(FutureTask<Boolean> build) {
+    try {
+      return build.get();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    } catch (ExecutionException e) {
+      switch (e.getCause()) {
+        case CancellationException _ -> {
+          System.out.println("build cancelled");
+          return false;
+        }
+        case RuntimeException cause -> throw cause;
+        case Error cause -> throw cause;
+        case Throwable cause -> throw new UndeclaredThrowableException(cause);
+      }
+    }
+  }
+
+  private static void watch(boolean force, int jobs, Path dir, Path dest, Path privateDest, Path template) throws IOException {
     var watchService = FileSystems.getDefault().newWatchService();
     var directories = scanDirectoriesToWatch(dir);
+    var planFactory = new PlanFactory(Main::mapping, force);
+    var state = WarmState.load(dir, dest, privateDest, template);
+    var allPaths = true;  // the first build checks all the paths
+    Set<Path> changedPaths = Set.of();
     for(;;) {
-      var planFactory = new PlanFactory(Main::mapping, force);
-      var plan = executePlan(planFactory, dir, dest, privateDest, template);
+      var plan = allPaths
+          ? planFactory.diff(dir, state.manifest, state.privateManifest, state.manager)
+          : planFactory.diff(dir, state.manifest, state.privateManifest, changedPaths, state.manager);
 
       directories.addAll(extractDirectoriesFromPlan(plan));
       for(var directory : directories) {
@@ -157,16 +418,57 @@ public class Main {
       }
       directories = new HashSet<>();
 
-      System.out.println("wait while watching " + dir);
-      WatchKey key;
+      // build in background, so the build can be cancelled if the files change again,
+      // a failure is reported as soon as the build stops and the files are checked again with the next changes
+      var cancelled = new AtomicBoolean();
+      var buildState = state;
+      var build = new FutureTask<>(() -> {
+        var completed = true;
+        try {
+          executePlan(plan, jobs, template, buildState, cancelled::get);
+        } catch (CancellationException e) {
+          throw e;
+        } catch (IOException | RuntimeException e) {
+          System.err.println("build failed " + e);
+          completed = false;
+        }
+        System.out.println("wait while watching " + dir);
+        return completed;
+      });
+      Thread.ofVirtual().name("build").start(build);
+
+      Optional<Set<Path>> newChangedPathsOpt;
       try {
-        key = watchService.take();
+        newChangedPathsOpt = waitForChanges(watchService);
       } catch (InterruptedException e) {
         throw new AssertionError(e);
       }
-      System.out.println(key.watchable() + " is modified");
-      key.pollEvents();  // empty events
-      key.reset();  // continue to watch the corresponding directory
+      cancelled.set(true);  // no effect if the build is already finished
+      var completed = awaitBuild(build);
+
+      if (newChangedPathsOpt.isEmpty()) {
+        // events were lost, start from scratch
+        state = WarmState.load(dir, dest, privateDest, template);
+        allPaths = true;
+        directories.addAll(scanDirectoriesToWatch(dir));
+        continue;
+      }
+      // only forget and re-generate what has changed
+      var newChangedPaths = newChangedPathsOpt.orElseThrow();
+      state = state.invalidate(template, newChangedPaths);
+      newChangedPaths.stream().filter(Files::isDirectory).forEach(directories::add);
+      if (completed) {
+        allPaths = false;
+        changedPaths = newChangedPaths;
+        continue;
+      }
+      // the paths of the cancelled or failed build still need to be checked,
+      // if the build was checking all the paths, the next one does too but with the same documents
+      if (!allPaths) {
+        var paths = new HashSet<>(changedPaths);
+        paths.addAll(newChangedPaths);
+        changedPaths = paths;
+      }
     }
   }
 
@@ -193,6 +495,7 @@ public class Main {
     var config = Config.parseConfig(args);
     config.displayConfig();
     var force = config.force();
+    var jobs = config.jobs();
     var watch = config.watch();
     var serve = config.serve();
     var dir = config.dir();
@@ -204,10 +507,11 @@ public class Main {
       serve(dest, privateDest);
     }
     if (watch) {
-      watch(force, dir, dest, privateDest, template);
+      watch(force, jobs, dir, dest, privateDest, template);
       return;
     }
     var planFactory = new PlanFactory(Main::mapping, force);
-    executePlan(planFactory, dir, dest, privateDest, template);
+    var state = WarmState.load(dir, dest, privateDest, template);
+    executePlan(planFactory.diff(dir, state.manifest, state.privateManifest, state.manager), jobs, template, state, () -> false);
   }
 }
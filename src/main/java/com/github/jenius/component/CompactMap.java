@@ -1,107 +1,266 @@
 package com.github.jenius.component;
 
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
-class CompactMap<K, V> extends AbstractMap<K, V> {
-  private final LinkedHashMap<K, V> map;
+/// An unmodifiable map of a few entries stored in a flat array of keys and values
+/// (key0, value0, key1, value1, etc), a key is found using a linear scan.
+///
+/// The attributes of an element are a `CompactMap<String, String>` backed by a `String[]`,
+/// the array itself is what the handlers exchange, see [#toAttributeArray(Map)].
+final class CompactMap<K, V> extends AbstractMap<K, V> {
+  static final String[] NO_ATTRIBUTES = new String[0];
 
-  private CompactMap(LinkedHashMap<K, V> map) {
-    this.map = map;
+  private static final CompactMap<?, ?> EMPTY = new CompactMap<>(NO_ATTRIBUTES);
+
+  final Object[] array;  // key0, value0, key1, value1, etc, can be a String[]
+
+  private CompactMap(Object[] array) {
+    this.array = array;
+  }
+
+  // checks the keys and the values, if a key is present several times,
+  // the first position and the last value are kept, like with a LinkedHashMap
+  private static <T> T[] checkAndMerge(T[] array) {
+    var length = array.length;
+    for(var i = 0; i < length; i += 2) {
+      var key = Objects.requireNonNull(array[i]);
+      Objects.requireNonNull(array[i + 1]);
+      for(var j = 0; j < i; j += 2) {
+        if (array[j].equals(key)) {
+          array[j + 1] = array[i + 1];
+          System.arraycopy(array, i + 2, array, i, length - i - 2);
+          length -= 2;
+          i -= 2;
+          break;
+        }
+      }
+    }
+    return length == array.length ? array : Arrays.copyOf(array, length);
   }
 
+  @SuppressWarnings("unchecked")
   public static <K, V> CompactMap<K, V> of() {
-    return new CompactMap<>(new LinkedHashMap<>());
+    return (CompactMap<K, V>) EMPTY;
   }
 
   public static <K, V> CompactMap<K, V> of(K key1, V value1) {
-    Objects.requireNonNull(key1);
-    Objects.requireNonNull(value1);
-    var map = new LinkedHashMap<K, V>();
-    map.put(key1, value1);
-    return new CompactMap<>(map);
+    return new CompactMap<>(checkAndMerge(new Object[] { key1, value1 }));
   }
 
   public static <K, V> CompactMap<K, V> of(K key1, V value1, K key2, V value2) {
-    Objects.requireNonNull(key1);
-    Objects.requireNonNull(value1);
-    Objects.requireNonNull(key2);
-    Objects.requireNonNull(value2);
-    var map = new LinkedHashMap<K, V>();
-    map.put(key1, value1);
-    map.put(key2, value2);
-    return new CompactMap<>(map);
+    return new CompactMap<>(checkAndMerge(new Object[] { key1, value1, key2, value2 }));
   }
 
   public static <K, V> CompactMap<K, V> of(K key1, V value1, K key2, V value2, K key3, V value3) {
-    Objects.requireNonNull(key1);
-    Objects.requireNonNull(value1);
-    Objects.requireNonNull(key2);
-    Objects.requireNonNull(value2);
-    Objects.requireNonNull(key3);
-    Objects.requireNonNull(value3);
-    var map = new LinkedHashMap<K, V>();
-    map.put(key1, value1);
-    map.put(key2, value2);
-    map.put(key3, value3);
-    return new CompactMap<>(map);
+    return new CompactMap<>(checkAndMerge(new Object[] { key1, value1, key2, value2, key3, value3 }));
   }
 
   public static <K, V> CompactMap<K, V> of(K key1, V value1, K key2, V value2, K key3, V value3, K key4, V value4) {
-    Objects.requireNonNull(key1);
-    Objects.requireNonNull(value1);
-    Objects.requireNonNull(key2);
-    Objects.requireNonNull(value2);
-    Objects.requireNonNull(key3);
-    Objects.requireNonNull(value3);
-    Objects.requireNonNull(key4);
-    Objects.requireNonNull(value4);
-    var map = new LinkedHashMap<K, V>();
-    map.put(key1, value1);
-    map.put(key2, value2);
-    map.put(key3, value3);
-    map.put(key4, value4);
-    return new CompactMap<>(map);
+    return new CompactMap<>(checkAndMerge(new Object[] { key1, value1, key2, value2, key3, value3, key4, value4 }));
+  }
+
+  /// Creates attributes from names and values (name0, value0, name1, value1, etc).
+  static CompactMap<String, String> ofAttributes(String... array) {
+    return array.length == 0 ? of() : new CompactMap<>(checkAndMerge(array));
+  }
+
+  /// Returns a view of an array of attributes, the array is neither checked nor copied.
+  static CompactMap<String, String> attributes(String[] array) {
+    return array.length == 0 ? of() : new CompactMap<>(array);
+  }
+
+  /// Returns the attributes as an array of names and values, the array must not be modified.
+  /// The array of a map created by [#ofAttributes(String...)] or [#attributes(String[])] is returned as is.
+  static String[] toAttributeArray(Map<String, String> attributes) {
+    if (attributes instanceof CompactMap<String, String> compactMap) {
+      if (compactMap.array instanceof String[] array) {
+        return array;
+      }
+      return Arrays.copyOf(compactMap.array, compactMap.array.length, String[].class);
+    }
+    if (attributes.isEmpty()) {
+      return NO_ATTRIBUTES;
+    }
+    var array = new String[attributes.size() << 1];
+    var index = 0;
+    for(var entry : attributes.entrySet()) {
+      array[index++] = Objects.requireNonNull(entry.getKey());
+      array[index++] = Objects.requireNonNull(entry.getValue());
+    }
+    return array;
   }
 
   @Override
   public int size() {
-    return map.size();
+    return array.length >> 1;
   }
 
   @Override
-  public Set<Entry<K, V>> entrySet() {
-    return Collections.unmodifiableSet(map.entrySet());
+  public boolean isEmpty() {
+    return array.length == 0;
   }
 
   @Override
-  public Set<K> keySet() {
-    return Collections.unmodifiableSet(map.keySet());
+  public boolean containsKey(Object key) {
+    return getOrDefault(key, null) != null;
   }
 
   @Override
-  public Collection<V> values() {
-    return Collections.unmodifiableCollection(map.values());
+  public boolean containsValue(Object value) {
+    Objects.requireNonNull(value);
+    for(var i = 1; i < array.length; i += 2) {
+      if (array[i].equals(value)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
-  public boolean containsKey(Object key) {
-    Objects.requireNonNull(key);
-    return map.containsKey(key);
+  public V get(Object key) {
+    return getOrDefault(key, null);
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public V getOrDefault(Object key, V defaultValue) {
     Objects.requireNonNull(key);
-    return map.getOrDefault(key, defaultValue);
+    for(var i = 0; i < array.length; i += 2) {
+      if (array[i].equals(key)) {
+        return (V) array[i + 1];
+      }
+    }
+    return defaultValue;
+  }
+
+  /// Returns the key at the index, an index between 0 and [#size()] (excluded).
+  @SuppressWarnings("unchecked")
+  K keyAt(int index) {
+    Objects.checkIndex(index, array.length >> 1);
+    return (K) array[index << 1];
+  }
+
+  /// Returns the value at the index, an index between 0 and [#size()] (excluded).
+  @SuppressWarnings("unchecked")
+  V valueAt(int index) {
+    Objects.checkIndex(index, array.length >> 1);
+    return (V) array[(index << 1) + 1];
   }
 
   @Override
-  public V get(Object key) {
-    return getOrDefault(key, null);
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    for(var i = 0; i < array.length; i += 2) {
+      action.accept((K) array[i], (V) array[i + 1]);
+    }
+  }
+
+  private abstract class ArrayIterator<T> implements Iterator<T> {
+    private int index;
+
+    abstract T element(int index);
+
+    @Override
+    public boolean hasNext() {
+      return index < array.length;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      var element = element(index);
+      index += 2;
+      return element;
+    }
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public int size() {
+        return array.length >> 1;
+      }
+
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        return new ArrayIterator<>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          Entry<K, V> element(int index) {
+            return Map.entry((K) array[index], (V) array[index + 1]);
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return new AbstractSet<>() {
+      @Override
+      public int size() {
+        return array.length >> 1;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+
+      @Override
+      public Iterator<K> iterator() {
+        return new ArrayIterator<>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          K element(int index) {
+            return (K) array[index];
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    return new AbstractCollection<>() {
+      @Override
+      public int size() {
+        return array.length >> 1;
+      }
+
+      @Override
+      public Iterator<V> iterator() {
+        return new ArrayIterator<>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          V element(int index) {
+            return (V) array[index + 1];
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    var hashCode = 0;
+    for(var i = 0; i < array.length; i += 2) {
+      hashCode += array[i].hashCode() ^ array[i + 1].hashCode();
+    }
+    return hashCode;
   }
 }
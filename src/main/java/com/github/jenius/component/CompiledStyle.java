@@ -0,0 +1,117 @@
+package com.github.jenius.component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/// A style flattened into a single table from names to components, see [ComponentStyle#compile()].
+///
+/// The styles created by [ComponentStyle#of(Map)], [ComponentStyle#rename(String...)],
+/// [ComponentStyle#anyMatch(ComponentStyle...)] and [ComponentStyle#alwaysMatch(Component)]
+/// are merged into the table, a user defined style can not be merged and is tried
+/// (with the styles after it) when a name is not in the table.
+final class CompiledStyle implements ComponentStyle {
+  record MapStyle(Map<? extends String, ? extends Component> map) implements ComponentStyle {
+    @Override
+    public Optional<Component> lookup(String name) {
+      return Optional.ofNullable(map.get(name));
+    }
+  }
+
+  record AnyMatchStyle(List<ComponentStyle> styles) implements ComponentStyle {
+    @Override
+    public Optional<Component> lookup(String name) {
+      for(var style : styles) {
+        var componentOpt = style.lookup(name);
+        if (componentOpt.isPresent()) {
+          return componentOpt;
+        }
+      }
+      return Optional.empty();
+    }
+  }
+
+  record AlwaysMatchStyle(Component component) implements ComponentStyle {
+    @Override
+    public Optional<Component> lookup(String name) {
+      return Optional.of(component);
+    }
+  }
+
+  private final HashMap<String, Component> table;
+  private final Component defaultComponent;  // or null
+  private final ComponentStyle rest;         // or null
+
+  private CompiledStyle(HashMap<String, Component> table, Component defaultComponent, ComponentStyle rest) {
+    this.table = table;
+    this.defaultComponent = defaultComponent;
+    this.rest = rest;
+  }
+
+  static CompiledStyle compile(ComponentStyle style) {
+    Objects.requireNonNull(style);
+    if (style instanceof CompiledStyle compiledStyle) {
+      return compiledStyle;
+    }
+    var table = new HashMap<String, Component>();
+    var pending = new ArrayDeque<ComponentStyle>();
+    pending.push(style);
+    ComponentStyle current;
+    while((current = pending.poll()) != null) {
+      switch (current) {
+        case AnyMatchStyle(List<ComponentStyle> styles) -> {
+          for(var i = styles.size(); --i >= 0;) {
+            pending.push(styles.get(i));
+          }
+        }
+        case MapStyle(Map<? extends String, ? extends Component> map) -> map.forEach(table::putIfAbsent);
+        case AlwaysMatchStyle(Component component) -> {
+          return new CompiledStyle(table, component, null);  // the styles after are never used
+        }
+        case CompiledStyle compiledStyle -> {
+          compiledStyle.table.forEach(table::putIfAbsent);
+          if (compiledStyle.defaultComponent != null) {
+            return new CompiledStyle(table, compiledStyle.defaultComponent, null);
+          }
+          if (compiledStyle.rest != null) {
+            pending.push(compiledStyle.rest);
+          }
+        }
+        default -> {
+          var styles = new ArrayList<ComponentStyle>();
+          styles.add(current);
+          styles.addAll(pending);
+          var rest = styles.size() == 1 ? current : new AnyMatchStyle(List.copyOf(styles));
+          return new CompiledStyle(table, null, rest);
+        }
+      }
+    }
+    return new CompiledStyle(table, null, null);
+  }
+
+  /// Returns the component of the element name or null.
+  Component component(String name) {
+    var component = table.get(name);
+    if (component != null) {
+      return component;
+    }
+    if (rest != null) {
+      return rest.lookup(name).orElse(null);
+    }
+    return defaultComponent;
+  }
+
+  @Override
+  public Optional<Component> lookup(String name) {
+    return Optional.ofNullable(component(name));
+  }
+
+  @Override
+  public ComponentStyle compile() {
+    return this;
+  }
+}
@@ -2,6 +2,7 @@ package com.github.jenius.component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -11,7 +12,13 @@ public interface ComponentStyle {
   Optional<Component> lookup(String name);
 
   default ComponentStyle ignoreAllOthers() {
-    return anyMatch(this, _ -> Optional.of(Component.discard()));
+    return anyMatch(this, alwaysMatch(Component.discard()));
+  }
+
+  /// Returns an equivalent style that finds the component of an element with a single table lookup,
+  /// the styles of a chain created by [#anyMatch(ComponentStyle...)] are merged once.
+  default ComponentStyle compile() {
+    return CompiledStyle.compile(this);
   }
 
   static ComponentStyle of(String name, Component component) {
@@ -54,7 +61,7 @@ public interface ComponentStyle {
 
   static ComponentStyle of(Map<? extends String, ? extends Component> componentMap) {
     Objects.requireNonNull(componentMap);
-    return name -> Optional.ofNullable(componentMap.get(name));
+    return new CompiledStyle.MapStyle(componentMap);
   }
 
   static ComponentStyle rename(String... pairs) {
@@ -62,31 +69,22 @@ public interface ComponentStyle {
     if (pairs.length % 2 != 0) {
       throw new IllegalArgumentException("not an array of pairs");
     }
-    var map = new HashMap<String, String>();
+    var map = new HashMap<String, Component>();
     for(var i = 0; i < pairs.length; i += 2) {
       var oldName = Objects.requireNonNull(pairs[i]);
       var newName = Objects.requireNonNull(pairs[i + 1]);
-      map.put(oldName, newName);
+      map.put(oldName, (_, attrs, b) -> b.node(newName, attrs));
     }
-    return name -> Optional.ofNullable(map.get(name))
-          .map(newName -> (_, attrs, b) -> b.node(newName, attrs));
+    return new CompiledStyle.MapStyle(map);
   }
 
   static ComponentStyle anyMatch(ComponentStyle... styles) {
     Objects.requireNonNull(styles);
-    return name -> {
-      for(var style : styles) {
-        var componentOpt = style.lookup(name);
-        if (componentOpt.isPresent()) {
-          return componentOpt;
-        }
-      }
-      return Optional.empty();
-    };
+    return new CompiledStyle.AnyMatchStyle(List.of(styles));
   }
 
   static ComponentStyle alwaysMatch(Component component) {
     Objects.requireNonNull(component);
-    return _ -> Optional.of(component);
+    return new CompiledStyle.AlwaysMatchStyle(component);
   }
 }
@@ -0,0 +1,173 @@
+package com.github.jenius.component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/// The branches of a template rendered into two outputs at once, see [Template#render(java.io.Writer, java.io.Writer, ComponentStyle, Fork)].
+///
+/// The slots are rewritten once and the events are written to both outputs,
+/// a component that renders differently for one of the outputs selects the branch of the events it emits,
+/// either for the next element (and its content) or for the events emitted by an action.
+public final class Fork {
+  public enum Branch {
+    FIRST, SECOND;
+
+    private int bit() {
+      return switch (this) {
+        case FIRST -> FIRST_BIT;
+        case SECOND -> SECOND_BIT;
+      };
+    }
+  }
+
+  private static final int FIRST_BIT = 1;
+  private static final int SECOND_BIT = 2;
+  private static final int BOTH = FIRST_BIT | SECOND_BIT;
+
+  private int mask = BOTH;       // the branches the events are written to
+  private int nextMask = BOTH;   // the branches of the next element
+  private int nextDepth;         // the depth at which the next element is selected
+  private int depth;             // the depth of the current element
+  private int[] savedDepths = new int[8];
+  private int[] savedMasks = new int[8];
+  private int savedCount;
+
+  /// The next element started and its content are only written to the branch.
+  /// The selection is forgotten if the current element ends before another element is started.
+  public void nextElement(Branch branch) {
+    Objects.requireNonNull(branch);
+    nextMask = branch.bit();
+    nextDepth = depth;
+  }
+
+  /// The events emitted by the action are only written to the branch.
+  /// @throws IllegalStateException if the action selects a branch of the next element but starts no element.
+  public void run(Branch branch, Runnable action) {
+    Objects.requireNonNull(branch);
+    Objects.requireNonNull(action);
+    var oldMask = mask;
+    var oldNextMask = nextMask;
+    var oldNextDepth = nextDepth;
+    mask &= branch.bit();
+    nextMask = BOTH;
+    var pending = false;
+    try {
+      action.run();
+      pending = nextMask != BOTH;
+    } finally {
+      mask = oldMask;
+      nextMask = oldNextMask;
+      nextDepth = oldNextDepth;
+    }
+    if (pending) {
+      throw new IllegalStateException("the branch of the next element is selected but no element is started");
+    }
+  }
+
+  /// Returns true if the events emitted now are written to the branch.
+  public boolean isWritten(Branch branch) {
+    Objects.requireNonNull(branch);
+    return (mask & branch.bit()) != 0;
+  }
+
+  void reset() {
+    mask = BOTH;
+    nextMask = BOTH;
+    nextDepth = 0;
+    depth = 0;
+    savedCount = 0;
+  }
+
+  /// Returns a content handler that writes the events to the handler of each branch.
+  XML.ContentHandler handler(XML.ContentHandler first, XML.ContentHandler second) {
+    Objects.requireNonNull(first);
+    Objects.requireNonNull(second);
+    return new XML.ContentHandler() {
+      @Override
+      public void declaration(String version, String encoding) {
+        if ((mask & FIRST_BIT) != 0) {
+          first.declaration(version, encoding);
+        }
+        if ((mask & SECOND_BIT) != 0) {
+          second.declaration(version, encoding);
+        }
+      }
+
+      @Override
+      public void startDocument() {
+        if ((mask & FIRST_BIT) != 0) {
+          first.startDocument();
+        }
+        if ((mask & SECOND_BIT) != 0) {
+          second.startDocument();
+        }
+      }
+
+      @Override
+      public void endDocument() {
+        if ((mask & FIRST_BIT) != 0) {
+          first.endDocument();
+        }
+        if ((mask & SECOND_BIT) != 0) {
+          second.endDocument();
+        }
+      }
+
+      @Override
+      public void startElement(String name, Map<String, String> attrs) {
+        startElement(name, CompactMap.toAttributeArray(attrs));
+      }
+
+      @Override
+      public void startElement(String name, String[] attributes) {
+        if (nextMask != BOTH) {
+          // the mask is restored when the element ends
+          if (savedCount == savedDepths.length) {
+            savedDepths = Arrays.copyOf(savedDepths, savedCount << 1);
+            savedMasks = Arrays.copyOf(savedMasks, savedCount << 1);
+          }
+          savedDepths[savedCount] = depth;
+          savedMasks[savedCount] = mask;
+          savedCount++;
+          mask &= nextMask;
+          nextMask = BOTH;
+        }
+        depth++;
+        if ((mask & FIRST_BIT) != 0) {
+          first.startElement(name, attributes);
+        }
+        if ((mask & SECOND_BIT) != 0) {
+          second.startElement(name, attributes);
+        }
+      }
+
+      @Override
+      public void endElement(String name) {
+        if ((mask & FIRST_BIT) != 0) {
+          first.endElement(name);
+        }
+        if ((mask & SECOND_BIT) != 0) {
+          second.endElement(name);
+        }
+        depth--;
+        if (savedCount != 0 && savedDepths[savedCount - 1] == depth) {
+          mask = savedMasks[--savedCount];
+        }
+        if (depth < nextDepth) {
+          nextMask = BOTH;  // the element that was current when the next element was selected has ended
+        }
+      }
+
+      @Override
+      public void characters(String content) {
+        if ((mask & FIRST_BIT) != 0) {
+          first.characters(content);
+        }
+        if ((mask & SECOND_BIT) != 0) {
+          second.characters(content);
+        }
+      }
+    };
+  }
+}
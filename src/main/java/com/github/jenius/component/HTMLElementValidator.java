@@ -54,8 +54,13 @@ final class HTMLElementValidator {
       //"strike", "xmp"
   );
 
+  // called once per name by the symbol table
+  static boolean isHTMLElement(String elementName) {
+    return HTML_ELEMENTS.contains(elementName.toLowerCase(Locale.ROOT));
+  }
+
   private static boolean isInvalidHTMLElement(String elementName) {
-    return !HTML_ELEMENTS.contains(elementName.toLowerCase(Locale.ROOT));
+    return !Symbols.symbol(elementName).is(Symbols.HTML);
   }
 
   public static XML.ContentHandler validateHTMLElements(XML.ContentHandler delegate) {
@@ -77,10 +82,15 @@ final class HTMLElementValidator {
 
       @Override
       public void startElement(String name, Map<String, String> attrs) {
+        startElement(name, CompactMap.toAttributeArray(attrs));
+      }
+
+      @Override
+      public void startElement(String name, String[] attributes) {
         if (isInvalidHTMLElement(name)) {
           throw new IllegalStateException("invalid HTML element " + name);
         }
-        delegate.startElement(name, attrs);
+        delegate.startElement(name, attributes);
       }
 
       @Override
@@ -1,94 +1,121 @@
 package com.github.jenius.component;
 
 import java.util.AbstractList;
-import java.util.AbstractMap;
-import java.util.AbstractSet;
 import java.util.ArrayDeque;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.RandomAccess;
-import java.util.Set;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
-
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/// A node of a document.
+///
+/// The document is stored as a compact tree: an element stores its name (a canonical instance),
+/// its attributes as an array of names and values and its children in an array,
+/// a text is directly stored as a String in the children of its element.
+/// A Node is a view of an element, a text or a declaration of that tree.
 public final class Node {
-  private static final class AttributeMap extends AbstractMap<String, String> {
-    private final org.jsoup.nodes.Attributes attributes;
-    private final int size;
-
-    private AttributeMap(org.jsoup.nodes.Attributes attributes) {
+  private static final Object[] NO_CHILDREN = new Object[0];
+  private static final int[] NO_REMOVALS = new int[0];
+
+  private static final class Element {
+    private final String name;
+    private final String[] attributes;
+    private final boolean document;
+    private Object[] children = NO_CHILDREN;  // Element, String or Declaration
+    private int childCount;
+    private int[] removedIndexes = NO_REMOVALS;  // the index of each removed child, in order
+    private int removalCount;
+    private Element parent;
+    private volatile Map<String, Element[]> nameIndex;  // of a document, built lazily, see [Node#find(String)]
+
+    private Element(String name, String[] attributes, boolean document) {
+      this.name = Symbols.name(name);
       this.attributes = attributes;
-      // jsoup bug: need to use asList().size() because size() count internal attributes too;
-      this.size = attributes.isEmpty() ? 0 : attributes.asList().size();
+      this.document = document;
     }
 
-    @Override
-    public Set<Entry<String, String>> entrySet() {
-      return new AbstractSet<>() {
-        @Override
-        public int size() {
-          return size;
-        }
-
-        @Override
-        public Iterator<Entry<String, String>> iterator() {
-          var it = attributes.iterator();
-          return new Iterator<>() {
-
-            @Override
-            public boolean hasNext() {
-              return it.hasNext();
-            }
-
-            @Override
-            public Entry<String, String> next() {
-              if (!hasNext()) {
-                throw new NoSuchElementException();
-              }
-              var attr = it.next();
-              return Map.entry(attr.getKey(), attr.getValue());
-            }
-          };
-        }
-      };
+    private void append(Object child) {
+      if (childCount == children.length) {
+        children = Arrays.copyOf(children, Math.max(4, childCount << 1));
+      }
+      children[childCount++] = child;
+      if (child instanceof Element element) {
+        element.parent = this;
+      }
     }
 
-    @Override
-    public boolean containsKey(Object key) {
-      return getOrDefault(key, null) != null;
+    private void appendText(String text) {
+      if (text.isEmpty()) {
+        return;
+      }
+      if (childCount != 0 && children[childCount - 1] instanceof String previous) {
+        children[childCount - 1] = previous.concat(text);
+        return;
+      }
+      append(text);
     }
 
-    @Override
-    public String get(Object key) {
-      return getOrDefault(key, null);
+    private int indexOf(Element child) {
+      for(var i = 0; i < childCount; i++) {
+        if (children[i] == child) {
+          return i;
+        }
+      }
+      return -1;
     }
 
-    @Override
-    public String getOrDefault(Object key, String defaultValue) {
-      Objects.requireNonNull(key);
-      if (!(key instanceof String name)) {
-        return defaultValue;
+    // the index is logged, so a text or a declaration can find its index again, see [Node#currentIndex()]
+    private void remove(int index) {
+      var child = children[index];
+      System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+      children[--childCount] = null;
+      if (removalCount == removedIndexes.length) {
+        removedIndexes = Arrays.copyOf(removedIndexes, Math.max(4, removalCount << 1));
       }
-      if (!attributes.hasKey(name)) {  // let's hope indexOf will be inlined
-        return defaultValue;
+      removedIndexes[removalCount++] = index;
+      if (child instanceof Element element) {
+        element.parent = null;
+      }
+    }
+
+    private void trimToSize() {
+      if (childCount != children.length) {
+        children = childCount == 0 ? NO_CHILDREN : Arrays.copyOf(children, childCount);
       }
-      return attributes.get(name);
     }
   }
 
-  final org.jsoup.nodes.Node jsoupNode;
+  private record Declaration(String version, String encoding) {}
 
-  Node(org.jsoup.nodes.Node jsoupNode) {
-    this.jsoupNode = jsoupNode;
+  private final Object item;    // Element, String or Declaration
+  private final Element parent; // parent of a text or a declaration, an element knows its parent
+  private final int index;      // index of a text or a declaration in its parent
+  private final int removalCount;  // number of children removed from the parent before the node was obtained
+
+  private Node(Object item, Element parent, int index) {
+    this.item = item;
+    this.parent = parent;
+    this.index = index;
+    this.removalCount = parent == null ? 0 : parent.removalCount;
+  }
+
+  private Node(Element element) {
+    this(element, null, -1);
+  }
+
+  private Element element() {
+    return (Element) item;
   }
 
   public static Node createDocument() {
-    var document = new org.jsoup.nodes.Document("");
-    return new Node(document);
+    return new Node(new Element("#document", CompactMap.NO_ATTRIBUTES, true));
   }
 
   public Node createNode(String name) {
@@ -107,209 +134,776 @@ public final class Node {
     Objects.requireNonNull(name);
     Objects.requireNonNull(attributes);
     Objects.requireNonNull(childNodes);
-    var element = new org.jsoup.nodes.Element(name);
-    attributes.forEach(element::attr);
-    List.copyOf(childNodes).forEach(n -> element.appendChild(n.jsoupNode));
-    return new Node(element);
+    var element = new Element(name, CompactMap.toAttributeArray(attributes), false);
+    var node = new Node(element);
+    List.copyOf(childNodes).forEach(node::appendChild);
+    return node;
+  }
+
+  // the index of a text or a declaration in its parent or -1 if it is not a child anymore,
+  // the index is not searched by identity because the blank texts are interned,
+  // the children are only appended at the end, so only the removals since the node was obtained move it
+  private int currentIndex() {
+    var current = index;
+    for(var i = removalCount; i < parent.removalCount; i++) {
+      var removed = parent.removedIndexes[i];
+      if (removed == current) {
+        return -1;
+      }
+      if (removed < current) {
+        current--;
+      }
+    }
+    return current < parent.childCount && parent.children[current] == item ? current : -1;
+  }
+
+  // a node is moved, like in the DOM
+  private void detach() {
+    switch (item) {
+      case Element element -> {
+        if (element.parent != null) {
+          elementsChanged(element.parent);
+          element.parent.remove(element.parent.indexOf(element));
+        }
+      }
+      default -> {
+        if (parent != null) {
+          var current = currentIndex();
+          if (current != -1) {
+            parent.remove(current);
+          }
+        }
+      }
+    }
   }
 
+  /// Appends a node, the node is removed from its former parent.
   public void appendChild(Node node) {
     Objects.requireNonNull(node);
-    ((org.jsoup.nodes.Element) jsoupNode).appendChild(node.jsoupNode);
+    var element = element();
+    node.detach();
+    element.append(node.item);
+    if (node.item instanceof Element) {
+      elementsChanged(element);
+    }
   }
 
+  /// Appends a text, if the last child is a text, the two texts are merged.
   public void appendText(String content) {
     Objects.requireNonNull(content);
-    ((org.jsoup.nodes.Element) jsoupNode).appendText(content);
+    element().appendText(content);
+  }
+
+  private static Node child(Element element, int index) {
+    return switch (element.children[index]) {
+      case Element child -> new Node(child);
+      case Object child -> new Node(child, element, index);
+    };
+  }
+
+  // returns the first child element named name (any name if name is null) or null
+  private static Element firstElement(Element element, String name) {
+    for(var i = 0; i < element.childCount; i++) {
+      if (element.children[i] instanceof Element child && (name == null || child.name.equals(name))) {
+        return child;
+      }
+    }
+    return null;
   }
 
   public Optional<Node> getFirstElement() {
-    return jsoupNode.childNodes().stream()
-        .filter(n -> n instanceof org.jsoup.nodes.Element)
-        .findFirst()
-        .map(Node::new);
+    if (!(item instanceof Element element)) {
+      return Optional.empty();
+    }
+    var child = firstElement(element, null);
+    return child == null ? Optional.empty() : Optional.of(new Node(child));
+  }
+
+  /// Returns the first child element with that name.
+  public Optional<Node> firstElementNamed(String name) {
+    Objects.requireNonNull(name);
+    if (!(item instanceof Element element)) {
+      return Optional.empty();
+    }
+    var child = firstElement(element, name);
+    return child == null ? Optional.empty() : Optional.of(new Node(child));
+  }
+
+  /// Calls the action on each child element, in order.
+  public void forEachElement(Consumer<? super Node> action) {
+    Objects.requireNonNull(action);
+    if (!(item instanceof Element element)) {
+      return;
+    }
+    for(var i = 0; i < element.childCount; i++) {
+      if (element.children[i] instanceof Element child) {
+        action.accept(new Node(child));
+      }
+    }
+  }
+
+  /// Calls the action on each child element with that name, in order.
+  public void forEachElement(String name, Consumer<? super Node> action) {
+    Objects.requireNonNull(name);
+    Objects.requireNonNull(action);
+    if (!(item instanceof Element element)) {
+      return;
+    }
+    for(var i = 0; i < element.childCount; i++) {
+      if (element.children[i] instanceof Element child && child.name.equals(name)) {
+        action.accept(new Node(child));
+      }
+    }
+  }
+
+  /// A cursor on the children of a node, the children are read in place and
+  /// a node is only created if [#node()] is called.
+  /// {@snippet :
+  ///   for(var cursor = node.childCursor(); cursor.next();) {
+  ///     if (cursor.isElement() && cursor.name().equals("leader")) {
+  ///       ...
+  ///     }
+  ///   }
+  /// }
+  public static final class ChildCursor {
+    private final Element element;  // or null if the node has no children
+    private int index = -1;
+
+    private ChildCursor(Element element) {
+      this.element = element;
+    }
+
+    private Object current() {
+      if (index < 0 || index >= element.childCount) {
+        throw new IllegalStateException("no current child");
+      }
+      return element.children[index];
+    }
+
+    /// Moves to the next child, returns false if there is no next child.
+    public boolean next() {
+      if (element == null || index >= element.childCount) {
+        return false;
+      }
+      return ++index < element.childCount;
+    }
+
+    /// Returns the index of the current child.
+    public int index() {
+      current();
+      return index;
+    }
+
+    /// Returns true if the current child is an element.
+    public boolean isElement() {
+      return current() instanceof Element;
+    }
+
+    /// Returns the name of the current child, see [Node#name()].
+    public String name() {
+      return Node.name(current());
+    }
+
+    /// Returns the text of the current child if it is a text, an empty string otherwise.
+    public String text() {
+      return current() instanceof String text ? text : "";
+    }
+
+    /// Returns the current child as a node.
+    public Node node() {
+      current();
+      return child(element, index);
+    }
+  }
+
+  /// Returns a cursor on the children.
+  public ChildCursor childCursor() {
+    return new ChildCursor(item instanceof Element element ? element : null);
+  }
+
+  private static String name(Object item) {
+    return switch (item) {
+      case Element element -> element.name;
+      case String _ -> "#text";
+      case Declaration _ -> "#declaration";
+      default -> throw new AssertionError();
+    };
+  }
+
+  private static String type(Object item) {
+    return switch (item) {
+      case Element element -> element.document ? "Document" : "Element";
+      case String _ -> "TextNode";
+      case Declaration _ -> "XmlDeclaration";
+      default -> throw new AssertionError();
+    };
   }
 
-  private static void toDebugString(org.jsoup.nodes.Node jsoupNode, StringBuilder builder, String indent) {
-    builder.append(indent).append("Node: ").append(jsoupNode.nodeName())
-        .append(" [Type: ").append(jsoupNode.getClass().getSimpleName()).append("]");
-    for(var attr : jsoupNode.attributes()) {
+  private static void toDebugString(Object item, StringBuilder builder, String indent) {
+    builder.append(indent).append("Node: ").append(name(item))
+        .append(" [Type: ").append(type(item)).append("]");
+    if (!(item instanceof Element element)) {
+      return;
+    }
+    for(var i = 0; i < element.attributes.length; i += 2) {
       builder.append(indent).append("  Attribute: ")
-          .append(attr.getKey()).append(" = ").append(attr.getValue()).append('\n');
+          .append(element.attributes[i]).append(" = ").append(element.attributes[i + 1]).append('\n');
     }
-    for (var child : jsoupNode.childNodes()) {
-      toDebugString(child, builder, indent + "  ");
+    for(var i = 0; i < element.childCount; i++) {
+      toDebugString(element.children[i], builder, indent + "  ");
     }
   }
 
   @Override
   public String toString() {
     var builder = new StringBuilder();
-    toDebugString(jsoupNode, builder, "  ");
+    toDebugString(item, builder, "  ");
     return builder.toString();
   }
 
   public String name() {
-    return jsoupNode.nodeName();
+    return name(item);
   }
 
-  public String text() {
-    return jsoupNode instanceof org.jsoup.nodes.Element element ? element.text() : "";
+  private static boolean lastCharIsSpace(StringBuilder builder) {
+    return !builder.isEmpty() && builder.charAt(builder.length() - 1) == ' ';
   }
 
-  static void visit(org.jsoup.nodes.Node jsoupNode, XML.ContentHandler handler) {
-    switch (jsoupNode) {
-      case org.jsoup.nodes.XmlDeclaration _ -> {
-          handler.declaration(jsoupNode.attr("version"), jsoupNode.attr("encoding"));
-          return;
+  // same normalization as jsoup, a non-breaking space is a whitespace, a zero width space and a soft hyphen are removed
+  private static void appendNormalizedText(StringBuilder builder, String text) {
+    var stripLeading = lastCharIsSpace(builder);
+    var lastWasWhite = false;
+    var reachedNonWhite = false;
+    for(var i = 0; i < text.length(); i++) {
+      var c = text.charAt(i);
+      switch (c) {
+        case ' ', '\t', '\n', '\f', '\r', '\u00a0' -> {
+          if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+            continue;
+          }
+          builder.append(' ');
+          lastWasWhite = true;
+        }
+        case '\u200b', '\u00ad' -> {}
+        default -> {
+          builder.append(c);
+          lastWasWhite = false;
+          reachedNonWhite = true;
+        }
       }
-      case org.jsoup.nodes.DocumentType _ -> { return; }  // ignore
-      case org.jsoup.nodes.TextNode textNode -> {
-        if (textNode.parent() instanceof org.jsoup.nodes.Document) {
-          return;
+    }
+  }
+
+  private static void appendText(Element element, StringBuilder builder) {
+    for(var i = 0; i < element.childCount; i++) {
+      switch (element.children[i]) {
+        case String text -> appendNormalizedText(builder, text);
+        case Element child -> {
+          if (child.name.equals("br") && !builder.isEmpty() && !lastCharIsSpace(builder)) {
+            builder.append(' ');
+          }
+          appendText(child, builder);
         }
-        var text = textNode.getWholeText();
-        handler.characters(text);
-        return;
+        default -> {}
       }
-      case org.jsoup.nodes.Document _ -> handler.startDocument();
-      case org.jsoup.nodes.Element element -> {
-        var name = element.nodeName();
-        handler.startElement(name, new AttributeMap(element.attributes()));
+    }
+  }
+
+  /// Returns the text of an element, the whitespaces are normalized like in jsoup.
+  public String text() {
+    if (!(item instanceof Element element)) {
+      return "";
+    }
+    var builder = new StringBuilder();
+    appendText(element, builder);
+    return builder.toString().trim();
+  }
+
+  private static void visitLeaf(Object item, Element parent, XML.ContentHandler handler) {
+    switch (item) {
+      case Declaration(String version, String encoding) -> handler.declaration(version, encoding);
+      case String text -> {
+        if (parent == null || !parent.document) {  // a text outside the root element is ignored
+          handler.characters(text);
+        }
       }
-      default -> {}
+      default -> throw new AssertionError();
     }
-    for(var i = 0; i < jsoupNode.childNodeSize(); i++) {
-      visit(jsoupNode.childNode(i), handler);
+  }
+
+  // returns true if the content of the element should be visited
+  private static boolean startElement(Element element, XML.ContentHandler handler) {
+    if (element.document) {
+      handler.startDocument();
+      return true;
     }
-    switch (jsoupNode) {
-      case org.jsoup.nodes.Document _ -> handler.endDocument();
-      case org.jsoup.nodes.Element element -> {
-        var name = element.nodeName();
-        handler.endElement(name);
+    handler.startElement(element.name, element.attributes);
+    return !handler.skipContent();
+  }
+
+  private static void endElement(Element element, XML.ContentHandler handler) {
+    if (element.document) {
+      handler.endDocument();
+    } else {
+      handler.endElement(element.name);
+    }
+  }
+
+  // the traversal uses its own stacks so a deeply nested document can not overflow the thread stack
+  private static void visit(Object item, Element parent, XML.ContentHandler handler) {
+    if (!(item instanceof Element root)) {
+      visitLeaf(item, parent, handler);
+      return;
+    }
+    if (!startElement(root, handler)) {
+      endElement(root, handler);
+      return;
+    }
+    var elements = new Element[16];
+    var indexes = new int[16];
+    var depth = 0;
+    var element = root;
+    var index = 0;
+    for(;;) {
+      if (index < element.childCount) {
+        var child = element.children[index++];
+        if (!(child instanceof Element childElement)) {
+          visitLeaf(child, element, handler);
+          continue;
+        }
+        if (!startElement(childElement, handler)) {
+          endElement(childElement, handler);
+          continue;
+        }
+        if (depth == elements.length) {
+          elements = Arrays.copyOf(elements, depth << 1);
+          indexes = Arrays.copyOf(indexes, depth << 1);
+        }
+        elements[depth] = element;
+        indexes[depth++] = index;
+        element = childElement;
+        index = 0;
+        continue;
       }
-      default -> {}
+      endElement(element, handler);
+      if (depth == 0) {
+        return;
+      }
+      element = elements[--depth];
+      index = indexes[depth];
+      elements[depth] = null;
     }
   }
 
   void visit(XML.ContentHandler handler) {
-    visit(jsoupNode, handler);
+    visit(item, parent, handler);
   }
 
-  static XML.ContentHandler asContentHandler(org.jsoup.nodes.Document document) {
-    var stack = new ArrayDeque<org.jsoup.nodes.Element>();
-    stack.push(document);
+  /// Returns a content handler that appends the elements, the texts and the declarations to the document.
+  /// The consecutive texts are merged, so they are stored as a single text.
+  static XML.ContentHandler asContentHandler(Node document) {
+    var stack = new ArrayDeque<Element>();
+    stack.push(document.element());
+    elementsChanged(document.element());
     return new XML.ContentHandler() {
+      private String text;            // the pending text or null
+      private StringBuilder builder;  // the pending text if there are several parts, or null
+
+      private void flushText() {
+        if (text == null) {
+          return;
+        }
+        var content = text;
+        if (builder != null) {
+          content = builder.toString();
+          builder = null;
+        }
+        text = null;
+        var element = Objects.requireNonNull(stack.peek());
+        // the whitespaces between the elements are often the same
+        element.appendText(content.isBlank() ? content.intern() : content);
+      }
+
       @Override
       public void declaration(String version, String encoding) {
-        var declaration = new org.jsoup.nodes.XmlDeclaration("xml", false)
-            .attr("version", version)
-            .attr("encoding", encoding);
-        document.appendChild(declaration);
+        flushText();
+        document.element().append(new Declaration(version, encoding));
       }
 
       @Override
       public void startElement(String name, Map<String,String> attrs) {
-        var element = document.createElement(name);
-        if (attrs instanceof AttributeMap attributeMap) {
-          element.attributes().addAll(attributeMap.attributes);
-        } else {
-          for (var entry : attrs.entrySet()) {
-            element.attr(entry.getKey(), entry.getValue());
-          }
-        }
+        startElement(name, CompactMap.toAttributeArray(attrs));
+      }
+
+      @Override
+      public void startElement(String name, String[] attributes) {
+        flushText();
+        var element = new Element(name, attributes, false);
         var parent = Objects.requireNonNull(stack.peek());
-        parent.appendChild(element);
+        parent.append(element);
         stack.push(element);
       }
 
       @Override
       public void endElement(String name) {
-        assert stack.peek() != null && stack.peek().nodeName().equals(name);
-        stack.pop();
+        flushText();
+        assert stack.peek() != null && stack.peek().name.equals(name);
+        stack.pop().trimToSize();
       }
 
       @Override
-      public void characters(String text) {
-        var element = Objects.requireNonNull(stack.peek());
-        element.appendText(text);
+      public void characters(String content) {
+        if (content.isEmpty()) {
+          return;
+        }
+        if (text == null) {
+          text = content;
+          return;
+        }
+        if (builder == null) {
+          builder = new StringBuilder(text);
+        }
+        builder.append(content);
       }
 
       @Override
       public void startDocument() {}
       @Override
-      public void endDocument() {}
+      public void endDocument() {
+        flushText();
+        elementsChanged(document.element());
+        document.element().trimToSize();
+      }
     };
   }
 
   public Map<String, String> attributes() {
-    var attributes = jsoupNode.attributes();
-    return new AttributeMap(attributes);
+    if (!(item instanceof Element element)) {
+      return Map.of();
+    }
+    return CompactMap.attributes(element.attributes);
   }
 
   public List<Node> elements() {
-    return IntStream.range(0, jsoupNode.childNodeSize())
-        .mapToObj(jsoupNode::childNode)
-        .filter(n -> n instanceof org.jsoup.nodes.Element)
-        .map(Node::new)
-        .toList();
+    if (!(item instanceof Element element)) {
+      return List.of();
+    }
+    var count = 0;
+    for(var i = 0; i < element.childCount; i++) {
+      if (element.children[i] instanceof Element) {
+        count++;
+      }
+    }
+    var nodes = new Node[count];
+    var index = 0;
+    for(var i = 0; i < element.childCount; i++) {
+      if (element.children[i] instanceof Element child) {
+        nodes[index++] = new Node(child);
+      }
+    }
+    return List.of(nodes);
   }
 
   public List<Node> childNodes() {
+    if (!(item instanceof Element element)) {
+      return List.of();
+    }
     class NodeList extends AbstractList<Node> implements RandomAccess {
       @Override
       public int size() {
-        return jsoupNode.childNodeSize();
+        return element.childCount;
       }
 
       @Override
       public Node get(int index) {
         Objects.checkIndex(index, size());
-        return new Node(jsoupNode.childNode(index));
+        return child(element, index);
       }
     }
     return new NodeList();
   }
 
-  private static org.jsoup.nodes.Element element(org.jsoup.nodes.Node jsoupNode, String name) {
-    Objects.requireNonNull(name);
-    return jsoupNode.childNodes().stream()
-        .flatMap(n -> n instanceof org.jsoup.nodes.Element element ? Stream.of(element) : null)
-        .findFirst()
-        .orElseThrow(() -> new IllegalStateException("no element named " + name + " found"));
-  }
-
   public Node path(String... names) {
     Objects.requireNonNull(names);
-    var domNode = this.jsoupNode;
+    var element = element();
     for(var name : names) {
-      domNode = element(domNode, name);
+      Objects.requireNonNull(name);
+      var child = firstElement(element, name);
+      if (child == null) {
+        throw new IllegalStateException("no element named " + name + " found");
+      }
+      element = child;
+    }
+    return new Node(element);
+  }
+
+  private static Element root(Element element) {
+    while(element.parent != null) {
+      element = element.parent;
+    }
+    return element;
+  }
+
+  private static boolean isDescendant(Element element, Element ancestor) {
+    for(var parent = element.parent; parent != null; parent = parent.parent) {
+      if (parent == ancestor) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // returns the first descendant element, in document order, for which the predicate is true, or null
+  private static Element findDescendant(Element element, Predicate<? super Element> predicate) {
+    var elements = new Element[16];
+    var indexes = new int[16];
+    elements[0] = element;
+    var depth = 1;
+    while(depth != 0) {
+      var parent = elements[depth - 1];
+      var index = indexes[depth - 1]++;
+      if (index == parent.childCount) {
+        elements[--depth] = null;
+        continue;
+      }
+      if (parent.children[index] instanceof Element child) {
+        if (predicate.test(child)) {
+          return child;
+        }
+        if (depth == elements.length) {
+          elements = Arrays.copyOf(elements, depth << 1);
+          indexes = Arrays.copyOf(indexes, depth << 1);
+        }
+        elements[depth] = child;
+        indexes[depth] = 0;
+        depth++;
+      }
     }
-    return new Node(domNode);
+    return null;
   }
 
+  // the index is dropped when the elements of the document change, and rebuilt by the next query
+  private static void elementsChanged(Element element) {
+    var root = root(element);
+    if (root.nameIndex != null) {
+      root.nameIndex = null;
+    }
+  }
+
+  // the elements of the document by name, in document order
+  private static Map<String, Element[]> nameIndex(Element document) {
+    var nameIndex = document.nameIndex;
+    if (nameIndex != null) {
+      return nameIndex;
+    }
+    var elementMap = new HashMap<String, ArrayList<Element>>();
+    findDescendant(document, element -> {
+      elementMap.computeIfAbsent(element.name, _ -> new ArrayList<>()).add(element);
+      return false;
+    });
+    var newIndex = HashMap.<String, Element[]>newHashMap(elementMap.size());
+    elementMap.forEach((name, elements) -> newIndex.put(name, elements.toArray(Element[]::new)));
+    document.nameIndex = newIndex;
+    return newIndex;
+  }
+
+  /// Returns the node or the descendant with that name.
+  /// If there are several descendants, the last one in document order or its outermost ancestor
+  /// with the same name is returned.
+  /// The elements of a document are found using an index built by the first query.
   public Optional<Node> find(String name) {
     Objects.requireNonNull(name);
-    var stack = new ArrayDeque<org.jsoup.nodes.Node>();
-    stack.offer(jsoupNode);
-    org.jsoup.nodes.Node current;
-    while((current = stack.poll()) != null) {
-      if (name.equals(current.nodeName())) {
-        return Optional.of(new Node(current));
+    if (name.equals(name())) {
+      return Optional.of(this);
+    }
+    if (!(item instanceof Element element)) {
+      return Optional.empty();
+    }
+    var root = root(element);
+    if (root.document && !name.startsWith("#")) {
+      var candidates = nameIndex(root).get(name);
+      if (candidates == null) {
+        return Optional.empty();
       }
-      for(var i = 0; i < current.childNodeSize(); i++) {
-        var item = current.childNode(i);
-        stack.push(item);
+      for(var i = candidates.length; --i >= 0;) {
+        var candidate = candidates[i];
+        if (isDescendant(candidate, element)) {
+          var result = candidate;
+          for(var ancestor = candidate.parent; ancestor != element; ancestor = ancestor.parent) {
+            if (ancestor.name.equals(name)) {
+              result = ancestor;
+            }
+          }
+          return Optional.of(new Node(result));
+        }
+      }
+      return Optional.empty();
+    }
+
+    // the children are tried from the last to the first, each one before its own children
+    var elements = new Element[16];
+    var indexes = new int[16];
+    elements[0] = element;
+    indexes[0] = element.childCount;
+    var depth = 1;
+    while(depth != 0) {
+      var parent = elements[depth - 1];
+      var index = --indexes[depth - 1];
+      if (index < 0) {
+        elements[--depth] = null;
+        continue;
+      }
+      var child = parent.children[index];
+      if (name.equals(name(child))) {
+        return Optional.of(child(parent, index));
+      }
+      if (child instanceof Element childElement) {
+        if (depth == elements.length) {
+          elements = Arrays.copyOf(elements, depth << 1);
+          indexes = Arrays.copyOf(indexes, depth << 1);
+        }
+        elements[depth] = childElement;
+        indexes[depth] = childElement.childCount;
+        depth++;
       }
     }
     return Optional.empty();
   }
 
+  // the element matches the step of the selector and its ancestors match the steps before
+  private static boolean matches(Selector selector, int step, Element element) {
+    if (!selector.matches(step, element.name, element.attributes)) {
+      return false;
+    }
+    if (step == 0) {
+      return true;
+    }
+    if (selector.isChild(step)) {
+      var parent = element.parent;
+      return parent != null && !parent.document && matches(selector, step - 1, parent);
+    }
+    for(var ancestor = element.parent; ancestor != null && !ancestor.document; ancestor = ancestor.parent) {
+      if (matches(selector, step - 1, ancestor)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // adds the descendants that match the selector in document order, only the first one if all is false
+  private void select(Selector selector, boolean all, ArrayList<Node> nodes) {
+    if (!(item instanceof Element element)) {
+      return;
+    }
+    var last = selector.lastStep();
+    var name = selector.name(last);
+    var root = root(element);
+    if (name != null && root.document) {
+      var candidates = nameIndex(root).get(name);
+      if (candidates == null) {
+        return;
+      }
+      for(var candidate : candidates) {
+        if (isDescendant(candidate, element) && matches(selector, last, candidate)) {
+          nodes.add(new Node(candidate));
+          if (!all) {
+            return;
+          }
+        }
+      }
+      return;
+    }
+    findDescendant(element, candidate -> {
+      if (!matches(selector, last, candidate)) {
+        return false;
+      }
+      nodes.add(new Node(candidate));
+      return !all;
+    });
+  }
+
+  /// Returns the descendant elements that match the selector, in document order.
+  /// The ancestors tested by the selector can be outside of this node, like with `querySelectorAll` in the DOM.
+  public List<Node> select(Selector selector) {
+    Objects.requireNonNull(selector);
+    var nodes = new ArrayList<Node>();
+    select(selector, true, nodes);
+    return Collections.unmodifiableList(nodes);
+  }
+
+  /// Returns the first descendant element, in document order, that matches the selector.
+  public Optional<Node> selectFirst(Selector selector) {
+    Objects.requireNonNull(selector);
+    var nodes = new ArrayList<Node>(1);
+    select(selector, false, nodes);
+    return nodes.isEmpty() ? Optional.empty() : Optional.of(nodes.getFirst());
+  }
+
   public void removeFromParent() {
-    var parent = jsoupNode.parent();
+    var parent = item instanceof Element element ? element.parent : this.parent;
     if (parent == null) {
       throw new IllegalStateException("no parent");
     }
-    jsoupNode.remove();
+    detach();
+  }
+
+  // jsoup backend
+
+  private static final org.jsoup.nodes.Attributes NO_JSOUP_ATTRIBUTES = new org.jsoup.nodes.Attributes();
+
+  // jsoup creates the attributes lazily, so reading them may mutate a node shared between threads
+  private static org.jsoup.nodes.Attributes attributes(org.jsoup.nodes.Node jsoupNode) {
+    return jsoupNode.attributesSize() == 0 ? NO_JSOUP_ATTRIBUTES : jsoupNode.attributes();
+  }
+
+  // the size of the jsoup attributes also counts the internal attributes that the iterator skips
+  private static String[] attributeArray(org.jsoup.nodes.Attributes attributes) {
+    if (attributes.isEmpty()) {
+      return CompactMap.NO_ATTRIBUTES;
+    }
+    var array = new String[attributes.size() << 1];
+    var index = 0;
+    for(var attribute : attributes) {
+      array[index++] = attribute.getKey();
+      array[index++] = attribute.getValue();
+    }
+    return index == array.length ? array : Arrays.copyOf(array, index);
+  }
+
+  /// Sends the events of a jsoup tree to the handler,
+  /// jsoup is not used to store the documents but can still be used to parse them.
+  static void visit(org.jsoup.nodes.Node jsoupNode, XML.ContentHandler handler) {
+    switch (jsoupNode) {
+      case org.jsoup.nodes.XmlDeclaration _ -> {
+          handler.declaration(jsoupNode.attr("version"), jsoupNode.attr("encoding"));
+          return;
+      }
+      case org.jsoup.nodes.DocumentType _ -> { return; }  // ignore
+      case org.jsoup.nodes.TextNode textNode -> {
+        if (textNode.parent() instanceof org.jsoup.nodes.Document) {
+          return;
+        }
+        var text = textNode.getWholeText();
+        handler.characters(text);
+        return;
+      }
+      case org.jsoup.nodes.Document _ -> handler.startDocument();
+      case org.jsoup.nodes.Element element -> {
+        var name = element.nodeName();
+        handler.startElement(name, attributeArray(attributes(element)));
+      }
+      default -> {}
+    }
+    for(var i = 0; i < jsoupNode.childNodeSize(); i++) {
+      visit(jsoupNode.childNode(i), handler);
+    }
+    switch (jsoupNode) {
+      case org.jsoup.nodes.Document _ -> handler.endDocument();
+      case org.jsoup.nodes.Element element -> {
+        var name = element.nodeName();
+        handler.endElement(name);
+      }
+      default -> {}
+    }
   }
 }
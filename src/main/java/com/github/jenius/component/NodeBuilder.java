@@ -12,11 +12,11 @@ public interface NodeBuilder {
   }
   /// Replace the current node (but not its content) by an element (defined by a name and attributes)
   default NodeBuilder node(String name, String key1, String value1) {
-    return node(name, CompactMap.of(key1, value1));
+    return node(name, CompactMap.ofAttributes(key1, value1));
   }
   /// Replace the current node (but not its content) by an element (defined by a name and attributes)
   default NodeBuilder node(String name, String key1, String value1, String key2, String value2) {
-    return node(name, CompactMap.of(key1, value1, key2, value2));
+    return node(name, CompactMap.ofAttributes(key1, value1, key2, value2));
   }
   /// Replace the current node (but not its content) by an element (defined by a name and attributes)
   default NodeBuilder node(String name, Map<String, String> map) {
@@ -28,11 +28,11 @@ public interface NodeBuilder {
   }
   /// Replace the current node (but not its content) by an element (defined by a name, attributes and children nodes)
   default NodeBuilder node(String name, String key1, String value1, Consumer<? super NodeBuilder> children) {
-    return node(name, CompactMap.of(key1, value1), children);
+    return node(name, CompactMap.ofAttributes(key1, value1), children);
   }
   /// Replace the current node (but not its content) by an element (defined by a name, attributes and children nodes)
   default NodeBuilder node(String name, String key1, String value1, String key2, String value2, Consumer<? super NodeBuilder> children) {
-    return node(name, CompactMap.of(key1, value1, key2, value2), children);
+    return node(name, CompactMap.ofAttributes(key1, value1, key2, value2), children);
   }
 
   /// Replace the current node (but not its content) by an element (defined by a name, attributes and children nodes)
@@ -0,0 +1,183 @@
+package com.github.jenius.component;
+
+import java.util.ArrayList;
+import java.util.Objects;
+
+/// A compiled selector of elements, see [Node#select(Selector)].
+///
+/// A selector is a list of steps separated by a space (a descendant) or by `>` (a child),
+/// a step is an element name or `*` followed by attribute tests, `[name]` or `[name=value]`,
+/// the value being optionally quoted, for example `section > exercise[title]`.
+public final class Selector {
+  private record Step(String name, String[] attributes, boolean child) {}  // name is null for *
+
+  private final String text;
+  private final Step[] steps;
+
+  private Selector(String text, Step[] steps) {
+    this.text = text;
+    this.steps = steps;
+  }
+
+  private static final class Parser {
+    private final String text;
+    private int index;
+
+    private Parser(String text) {
+      this.text = text;
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("invalid selector " + text + ", " + message + " at " + index);
+    }
+
+    private boolean skipSpaces() {
+      var start = index;
+      while(index < text.length() && Character.isWhitespace(text.charAt(index))) {
+        index++;
+      }
+      return index != start;
+    }
+
+    private boolean isNameChar(char c) {
+      return !Character.isWhitespace(c) && c != '>' && c != '[' && c != ']' && c != '=' && c != '"' && c != '\'';
+    }
+
+    private String name() {
+      var start = index;
+      while(index < text.length() && isNameChar(text.charAt(index))) {
+        index++;
+      }
+      if (index == start) {
+        throw error("name expected");
+      }
+      return text.substring(start, index);
+    }
+
+    private String value() {
+      if (index < text.length() && (text.charAt(index) == '"' || text.charAt(index) == '\'')) {
+        var quote = text.charAt(index);
+        var end = text.indexOf(quote, index + 1);
+        if (end == -1) {
+          throw error("unterminated value");
+        }
+        var value = text.substring(index + 1, end);
+        index = end + 1;
+        return value;
+      }
+      return name();
+    }
+
+    private void expect(char c) {
+      if (index == text.length() || text.charAt(index) != c) {
+        throw error("'" + c + "' expected");
+      }
+      index++;
+    }
+
+    private Step step(boolean child) {
+      String name = null;
+      var any = index < text.length() && text.charAt(index) == '*';
+      if (any) {
+        index++;
+      } else if (index < text.length() && text.charAt(index) != '[') {
+        name = name();
+      }
+      var attributes = new ArrayList<String>();
+      while(index < text.length() && text.charAt(index) == '[') {
+        index++;
+        skipSpaces();
+        attributes.add(name());
+        skipSpaces();
+        String value = null;
+        if (index < text.length() && text.charAt(index) == '=') {
+          index++;
+          skipSpaces();
+          value = value();
+          skipSpaces();
+        }
+        attributes.add(value);
+        expect(']');
+      }
+      if (name == null && !any && attributes.isEmpty()) {
+        throw error("element name expected");
+      }
+      return new Step(name, attributes.toArray(String[]::new), child);
+    }
+
+    private Step[] steps() {
+      var steps = new ArrayList<Step>();
+      skipSpaces();
+      var child = false;
+      for(;;) {
+        if (index == text.length()) {
+          throw error("element name expected");
+        }
+        steps.add(step(child));
+        var space = skipSpaces();
+        if (index == text.length()) {
+          return steps.toArray(Step[]::new);
+        }
+        child = text.charAt(index) == '>';
+        if (child) {
+          index++;
+          skipSpaces();
+        } else if (!space) {
+          throw error("unexpected character '" + text.charAt(index) + "'");
+        }
+      }
+    }
+  }
+
+  /// Compiles a selector.
+  /// @throws IllegalArgumentException if the selector is not valid.
+  public static Selector compile(String text) {
+    Objects.requireNonNull(text);
+    return new Selector(text, new Parser(text).steps());
+  }
+
+  int lastStep() {
+    return steps.length - 1;
+  }
+
+  /// Returns the element name of a step or null if the step matches any element.
+  String name(int step) {
+    return steps[step].name;
+  }
+
+  /// Returns true if the step is separated from the previous one by `>`.
+  boolean isChild(int step) {
+    return steps[step].child;
+  }
+
+  /// Returns true if an element with that name and those attributes matches the step,
+  /// the ancestors are not checked.
+  boolean matches(int step, String name, String[] attributes) {
+    var current = steps[step];
+    if (current.name != null && !current.name.equals(name)) {
+      return false;
+    }
+    var tests = current.attributes;
+    for(var i = 0; i < tests.length; i += 2) {
+      var value = attribute(attributes, tests[i]);
+      if (value == null || (tests[i + 1] != null && !tests[i + 1].equals(value))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String attribute(String[] attributes, String name) {
+    for(var i = 0; i < attributes.length; i += 2) {
+      if (attributes[i].equals(name)) {
+        return attributes[i + 1];
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+}
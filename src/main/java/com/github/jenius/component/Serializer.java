@@ -0,0 +1,380 @@
+package com.github.jenius.component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// Serializes the events of a [XML.ContentHandler] directly to a writer,
+/// with indentation rules close to the ones of the jsoup pretty printer:
+/// a block element starts on a new line, an inline element and the text flow on the same line,
+/// the whitespaces of the text are collapsed, except inside a `pre`, a `textarea`, a `script` or a `style`.
+final class Serializer {
+  // elements that start on a new line, their first child too
+  private static final Set<String> BLOCK_ELEMENTS = Set.of(
+      "html", "head", "body", "base", "link", "meta", "noscript",
+      "address", "article", "aside", "footer", "header", "hgroup", "main", "nav", "section", "search",
+      "blockquote", "dd", "div", "dl", "dt", "figcaption", "figure", "hr", "menu", "ol", "ul",
+      "caption", "col", "colgroup", "table", "tbody", "tfoot", "thead", "tr",
+      "audio", "canvas", "video", "svg", "math",
+      "details", "dialog", "fieldset", "form", "template", "center",
+      "br"
+  );
+
+  // elements that start on a new line, but their content and their end tag are formatted inline
+  private static final Set<String> INLINE_FORMATTED_ELEMENTS = Set.of(
+      "title", "h1", "h2", "h3", "h4", "h5", "h6", "p", "pre", "li", "td", "th", "script", "style"
+  );
+
+  // elements without content and without end tag in HTML
+  private static final Set<String> VOID_ELEMENTS = Set.of(
+      "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "source", "track", "wbr"
+  );
+
+  // elements whose whitespaces are preserved
+  private static final Set<String> PRESERVE_WHITESPACE_ELEMENTS = Set.of(
+      "pre", "textarea", "script", "style"
+  );
+
+  // elements whose text is not escaped in HTML
+  private static final Set<String> RAW_TEXT_ELEMENTS = Set.of(
+      "script", "style"
+  );
+
+  private static final int INDENT = 2;
+
+  private enum Format { BLOCK, INLINE_FORMATTED, INLINE }
+
+  // called once per name by the symbol table
+  static int flags(String name) {
+    return (BLOCK_ELEMENTS.contains(name) ? Symbols.BLOCK : 0)
+        | (INLINE_FORMATTED_ELEMENTS.contains(name) ? Symbols.INLINE_FORMATTED : 0)
+        | (VOID_ELEMENTS.contains(name) ? Symbols.VOID : 0)
+        | (PRESERVE_WHITESPACE_ELEMENTS.contains(name) ? Symbols.PRESERVE_WHITESPACE : 0)
+        | (RAW_TEXT_ELEMENTS.contains(name) ? Symbols.RAW_TEXT : 0);
+  }
+
+  private static Format format(Symbols.Symbol symbol) {
+    if (symbol.is(Symbols.BLOCK)) {
+      return Format.BLOCK;
+    }
+    if (symbol.is(Symbols.INLINE_FORMATTED)) {
+      return Format.INLINE_FORMATTED;
+    }
+    return Format.INLINE;
+  }
+
+  private static final class Frame {
+    private final Symbols.Symbol symbol;
+    private final String name;
+    private final Format format;
+    private boolean hasBlock;
+    private boolean hasText;
+
+    private Frame(Symbols.Symbol symbol) {
+      this.symbol = symbol;
+      this.name = symbol.name();
+      this.format = format(symbol);
+    }
+  }
+
+  private record FrameState(String name, Format format, boolean hasBlock, boolean hasText) {}
+
+  /// The state of a serializer, two serializers in the same state write the same text for the same events
+  record State(List<FrameState> frames, boolean empty, boolean startTagOpen, boolean pendingSpace,
+               boolean afterBlock, int preserveWhitespaceDepth) {}
+
+  static final class SerializerHandler implements XML.ContentHandler {
+    private Writer writer;
+    private final boolean html;
+    private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+    private boolean empty = true;             // nothing written yet
+    private boolean startTagOpen;             // the '>' of the last start tag is not written yet
+    private boolean pendingSpace;             // a whitespace is pending, dropped before a new line
+    private boolean afterBlock;               // the last thing written is a block
+    private int preserveWhitespaceDepth;      // number of enclosing elements that preserve whitespaces
+    private final StringBuilder buffer = new StringBuilder();  // the text being escaped
+
+    private SerializerHandler(Writer writer, boolean html) {
+      this.writer = writer;
+      this.html = html;
+    }
+
+    State state() {
+      var frames = stack.stream()
+          .map(frame -> new FrameState(frame.name, frame.format, frame.hasBlock, frame.hasText))
+          .toList();
+      return new State(frames, empty, startTagOpen, pendingSpace, afterBlock, preserveWhitespaceDepth);
+    }
+
+    /// Writes a text already serialized from the current state, then moves to the state after that text
+    void writeSerialized(String text, State state) {
+      write(text);
+      stack.clear();
+      for(var frameState : state.frames) {
+        var frame = new Frame(Symbols.symbol(frameState.name));
+        frame.hasBlock = frameState.hasBlock;
+        frame.hasText = frameState.hasText;
+        stack.addLast(frame);
+      }
+      empty = state.empty;
+      startTagOpen = state.startTagOpen;
+      pendingSpace = state.pendingSpace;
+      afterBlock = state.afterBlock;
+      preserveWhitespaceDepth = state.preserveWhitespaceDepth;
+    }
+
+    /// Returns the text written by the action, the text is also written to the writer
+    String capture(Runnable action) {
+      var oldWriter = writer;
+      var stringWriter = new StringWriter();
+      writer = stringWriter;
+      try {
+        action.run();
+      } finally {
+        writer = oldWriter;
+      }
+      var text = stringWriter.toString();
+      if (!text.isEmpty()) {
+        write(text);
+      }
+      return text;
+    }
+
+    private void write(String text) {
+      try {
+        writer.write(text);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      empty = false;
+    }
+
+    private void write(char c) {
+      try {
+        writer.write(c);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      empty = false;
+    }
+
+    private void closeStartTag() {
+      if (startTagOpen) {
+        write('>');
+        startTagOpen = false;
+      }
+    }
+
+    private void newLine(int depth) {
+      pendingSpace = false;
+      if (empty) {
+        return;
+      }
+      write('\n');
+      write(" ".repeat(depth * INDENT));
+    }
+
+    // write the pending whitespace or a new line if the previous sibling is a block
+    private void beforeInline() {
+      var frame = stack.peek();
+      var atBlockStart = startTagOpen && frame != null && frame.format != Format.INLINE;
+      closeStartTag();
+      if (preserveWhitespaceDepth != 0) {
+        return;
+      }
+      if (afterBlock) {
+        afterBlock = false;
+        newLine(stack.size());
+        return;
+      }
+      if (pendingSpace) {
+        pendingSpace = false;
+        if (!atBlockStart && !empty) {  // a leading whitespace in a block is not significant
+          write(' ');
+        }
+      }
+    }
+
+    private void escape(char c, boolean attribute) {
+      switch (c) {
+        case '&' -> buffer.append("&amp;");
+        case '<' -> buffer.append(attribute && html ? "<" : "&lt;");
+        case '>' -> buffer.append(attribute ? ">" : "&gt;");
+        case '"' -> buffer.append(attribute ? "&quot;" : "\"");
+        case '\u00a0' -> buffer.append(html ? "&nbsp;" : "&#xa0;");
+        default -> buffer.append(c);
+      }
+    }
+
+    private void escape(String text, boolean attribute) {
+      buffer.setLength(0);
+      for(var i = 0; i < text.length(); i++) {
+        escape(text.charAt(i), attribute);
+      }
+      write(buffer.toString());
+    }
+
+    private static boolean isWhitespace(char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    @Override
+    public void declaration(String version, String encoding) {
+      write("<?xml");
+      if (!version.isEmpty()) {
+        write(" version=\"");
+        escape(version, true);
+        write('"');
+      }
+      if (!encoding.isEmpty()) {
+        write(" encoding=\"");
+        escape(encoding, true);
+        write('"');
+      }
+      write("?>");
+      afterBlock = true;
+    }
+
+    @Override
+    public void startDocument() {}
+
+    @Override
+    public void endDocument() {
+      closeStartTag();
+      try {
+        writer.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void startElement(String name, Map<String, String> attrs) {
+      startElement(name, CompactMap.toAttributeArray(attrs));
+    }
+
+    @Override
+    public void startElement(String name, String[] attributes) {
+      var frame = new Frame(Symbols.symbol(name));
+      var format = frame.format;
+      var parent = stack.peek();
+      if (preserveWhitespaceDepth == 0 && format == Format.INLINE
+          && startTagOpen && parent != null && parent.format == Format.BLOCK) {
+        afterBlock = true;  // the first child of a block starts on a new line
+      }
+      if (format == Format.INLINE || preserveWhitespaceDepth != 0) {
+        beforeInline();
+      } else {
+        closeStartTag();
+        if (parent != null && !name.equals("br")) {
+          parent.hasBlock = true;
+        }
+        newLine(stack.size());
+      }
+      afterBlock = false;
+      write('<');
+      write(name);
+      for(var i = 0; i < attributes.length; i += 2) {
+        write(' ');
+        write(attributes[i]);
+        write("=\"");
+        escape(attributes[i + 1], true);
+        write('"');
+      }
+      startTagOpen = true;
+      stack.push(frame);
+      if (frame.symbol.is(Symbols.PRESERVE_WHITESPACE)) {
+        preserveWhitespaceDepth++;
+      }
+    }
+
+    @Override
+    public void endElement(String name) {
+      var frame = stack.pop();
+      assert frame.name.equals(name);
+      if (frame.symbol.is(Symbols.PRESERVE_WHITESPACE)) {
+        preserveWhitespaceDepth--;
+      }
+      if (pendingSpace && frame.format == Format.INLINE && preserveWhitespaceDepth == 0) {
+        // a trailing whitespace in an inline element is significant
+        closeStartTag();
+        write(' ');
+        pendingSpace = false;
+      }
+      if (startTagOpen) {  // no content
+        startTagOpen = false;
+        if (frame.symbol.is(Symbols.VOID)) {
+          write(html ? ">" : " />");
+        } else {
+          write(html ? "></" + name + ">" : " />");
+        }
+      } else {
+        // the end tag of an element that only contains blocks is on a new line
+        if (frame.hasBlock && !frame.hasText && preserveWhitespaceDepth == 0) {
+          newLine(stack.size());
+        }
+        pendingSpace = false;
+        write("</");
+        write(name);
+        write('>');
+      }
+      afterBlock = frame.format != Format.INLINE && preserveWhitespaceDepth == 0;
+    }
+
+    @Override
+    public void characters(String content) {
+      if (content.isEmpty()) {
+        return;
+      }
+      var frame = stack.peek();
+      if (preserveWhitespaceDepth != 0) {
+        closeStartTag();
+        if (html && frame != null && frame.symbol.is(Symbols.RAW_TEXT)) {
+          write(content);
+        } else {
+          escape(content, false);
+        }
+        return;
+      }
+
+      // collapse the whitespaces and escape in one pass, the text is written at once
+      buffer.setLength(0);
+      var space = false;
+      for(var i = 0; i < content.length(); i++) {
+        var c = content.charAt(i);
+        if (isWhitespace(c)) {
+          space = true;
+          continue;
+        }
+        if (space && !buffer.isEmpty()) {
+          buffer.append(' ');
+        }
+        space = false;
+        escape(c, false);
+      }
+      if (buffer.isEmpty()) {  // only whitespaces
+        pendingSpace = true;
+        return;
+      }
+      pendingSpace |= isWhitespace(content.charAt(0));
+      if (frame != null) {
+        frame.hasText = true;
+      }
+      var text = buffer.toString();
+      beforeInline();
+      write(text);
+      pendingSpace = space;
+    }
+  }
+
+  /// Returns a content handler that writes the events as HTML or XML into the writer.
+  /// An [IOException] is wrapped into an [UncheckedIOException].
+  public static SerializerHandler serializer(Writer writer, XML.OutputKind outputKind) {
+    return new SerializerHandler(writer, outputKind == XML.OutputKind.HTML);
+  }
+}
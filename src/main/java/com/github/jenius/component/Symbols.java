@@ -0,0 +1,103 @@
+package com.github.jenius.component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/// The symbol table of the element and attribute names.
+/// Each name is registered once, it has a single String instance, so the names are compared by identity first,
+/// and the properties of the HTML element of the same name, so they are found with a single lookup.
+final class Symbols {
+  static final int HTML = 1;                  // a valid HTML element, see [HTMLElementValidator]
+  static final int BLOCK = 2;                 // see [Serializer]
+  static final int INLINE_FORMATTED = 4;      // see [Serializer]
+  static final int VOID = 8;                  // see [Serializer]
+  static final int PRESERVE_WHITESPACE = 16;  // see [Serializer]
+  static final int RAW_TEXT = 32;             // see [Serializer]
+
+  record Symbol(String name, int flags) {
+    boolean is(int flag) {
+      return (flags & flag) != 0;
+    }
+  }
+
+  private static final ConcurrentHashMap<String, Symbol> SYMBOL_MAP = new ConcurrentHashMap<>();
+
+  private Symbols() {
+    throw new AssertionError();
+  }
+
+  private static Symbol register(String name) {
+    var flags = (HTMLElementValidator.isHTMLElement(name) ? HTML : 0) | Serializer.flags(name);
+    return new Symbol(name.intern(), flags);  // same instance as the string literals
+  }
+
+  static Symbol symbol(String name) {
+    var symbol = SYMBOL_MAP.get(name);
+    if (symbol != null) {
+      return symbol;
+    }
+    return SYMBOL_MAP.computeIfAbsent(name, Symbols::register);
+  }
+
+  /// Returns the single instance of a name.
+  static String name(String name) {
+    return symbol(name).name;
+  }
+
+  /// A cache of the symbols that finds a name directly from the characters, without creating a String.
+  /// A cache is not thread-safe.
+  static final class Cache {
+    private Symbol[] symbols = new Symbol[64];
+    private int size;
+
+    private static boolean matches(String name, char[] buffer, int start, int end) {
+      if (name.length() != end - start) {
+        return false;
+      }
+      for(var i = start; i < end; i++) {
+        if (name.charAt(i - start) != buffer[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /// Returns the single instance of the name made of the characters between start and end.
+    String name(char[] buffer, int start, int end) {
+      var hash = 0;
+      for(var i = start; i < end; i++) {
+        hash = 31 * hash + buffer[i];  // same hash as String.hashCode()
+      }
+      var mask = symbols.length - 1;
+      for(var index = hash & mask;; index = (index + 1) & mask) {
+        var symbol = symbols[index];
+        if (symbol == null) {
+          symbol = symbol(new String(buffer, start, end - start));
+          symbols[index] = symbol;
+          if (++size << 1 == symbols.length) {
+            rehash();
+          }
+          return symbol.name;
+        }
+        if (matches(symbol.name, buffer, start, end)) {
+          return symbol.name;
+        }
+      }
+    }
+
+    private void rehash() {
+      var newSymbols = new Symbol[symbols.length << 1];
+      var mask = newSymbols.length - 1;
+      for(var symbol : symbols) {
+        if (symbol == null) {
+          continue;
+        }
+        var index = symbol.name.hashCode() & mask;
+        while(newSymbols[index] != null) {
+          index = (index + 1) & mask;
+        }
+        newSymbols[index] = symbol;
+      }
+      symbols = newSymbols;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.github.jenius.component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// A template compiled once and rendered for several pages.
+/// The elements of the template are rewritten once by the static style,
+/// only the slots, the elements that depend on the page, are rewritten for each page.
+/// The static parts between two slots are serialized once for each state of the serializer
+/// at the beginning of the part, so they are copied as-is most of the time.
+public final class Template {
+  private sealed interface Event {
+    record Declaration(String version, String encoding) implements Event {}
+    enum DocumentEvent implements Event { START_DOCUMENT, END_DOCUMENT }
+    record StartElement(String name, String[] attributes) implements Event {}
+    record EndElement(String name) implements Event {}
+    record Characters(String content) implements Event {}
+
+    private void replay(XML.ContentHandler handler) {
+      switch (this) {
+        case Declaration(String version, String encoding) -> handler.declaration(version, encoding);
+        case DocumentEvent.START_DOCUMENT -> handler.startDocument();
+        case DocumentEvent.END_DOCUMENT -> handler.endDocument();
+        case StartElement(String name, String[] attributes) -> handler.startElement(name, attributes);
+        case EndElement(String name) -> handler.endElement(name);
+        case Characters(String content) -> handler.characters(content);
+      }
+    }
+  }
+
+  private record Output(String text, Serializer.State state) {}
+
+  private sealed interface Chunk {
+    record Static(List<Event> events, ConcurrentHashMap<Serializer.State, Output> outputMap) implements Chunk {
+      private void render(Serializer.SerializerHandler serializer) {
+        var state = serializer.state();
+        var output = outputMap.get(state);
+        if (output != null) {
+          serializer.writeSerialized(output.text, output.state);
+          return;
+        }
+        var text = serializer.capture(() -> events.forEach(event -> event.replay(serializer)));
+        outputMap.putIfAbsent(state, new Output(text, serializer.state()));
+      }
+    }
+    record Slot(Node node) implements Chunk {}
+  }
+
+  private static final class Recorder implements XML.ContentHandler {
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+    private ArrayList<Event> events = new ArrayList<>();
+
+    private void slot(Node node) {
+      flush();
+      chunks.add(new Chunk.Slot(node));
+    }
+
+    private void flush() {
+      if (!events.isEmpty()) {
+        chunks.add(new Chunk.Static(List.copyOf(events), new ConcurrentHashMap<>()));
+        events = new ArrayList<>();
+      }
+    }
+
+    @Override
+    public void declaration(String version, String encoding) {
+      events.add(new Event.Declaration(version, encoding));
+    }
+
+    @Override
+    public void startDocument() {
+      events.add(Event.DocumentEvent.START_DOCUMENT);
+    }
+
+    @Override
+    public void endDocument() {
+      events.add(Event.DocumentEvent.END_DOCUMENT);
+    }
+
+    @Override
+    public void startElement(String name, Map<String, String> attrs) {
+      startElement(name, CompactMap.toAttributeArray(attrs));
+    }
+
+    @Override
+    public void startElement(String name, String[] attributes) {
+      events.add(new Event.StartElement(name, attributes));
+    }
+
+    @Override
+    public void endElement(String name) {
+      events.add(new Event.EndElement(name));
+    }
+
+    @Override
+    public void characters(String content) {
+      // consecutive texts are replayed as one text
+      if (!events.isEmpty() && events.getLast() instanceof Event.Characters(String previous)) {
+        events.set(events.size() - 1, new Event.Characters(previous.concat(content)));
+        return;
+      }
+      events.add(new Event.Characters(content));
+    }
+  }
+
+  private final XML.OutputKind outputKind;
+  private final List<Chunk> chunks;
+
+  private Template(XML.OutputKind outputKind, List<Chunk> chunks) {
+    this.outputKind = outputKind;
+    this.chunks = chunks;
+  }
+
+  /// Compiles the template, the elements named by slotNames are rendered for each page,
+  /// the other elements are rewritten once by the style.
+  public static Template compile(Node template, XML.OutputKind outputKind, ComponentStyle style, Set<String> slotNames) {
+    Objects.requireNonNull(template);
+    Objects.requireNonNull(outputKind);
+    Objects.requireNonNull(style);
+    Objects.requireNonNull(slotNames);
+    var recorder = new Recorder();
+    Component slotComponent = (_, _, b) -> b.collect((node, _) -> recorder.slot(node));
+    var slotMap = new HashMap<String, Component>();
+    for(var slotName : slotNames) {
+      slotMap.put(slotName, slotComponent);
+    }
+    template.visit(XML.filter(recorder, ComponentStyle.anyMatch(ComponentStyle.of(slotMap), style)));
+    recorder.flush();
+    return new Template(outputKind, List.copyOf(recorder.chunks));
+  }
+
+  /// Renders the template, the slots are rewritten by the slot style.
+  public void render(Writer writer, ComponentStyle slotStyle) throws IOException {
+    Objects.requireNonNull(writer);
+    Objects.requireNonNull(slotStyle);
+    var serializer = Serializer.serializer(writer, outputKind);
+    var filter = XML.filter(serializer, slotStyle);  // the style is compiled once for all the slots
+    try {
+      for(var chunk : chunks) {
+        switch (chunk) {
+          case Chunk.Static staticChunk -> staticChunk.render(serializer);
+          case Chunk.Slot(Node node) -> {
+            filter.reset();
+            node.visit(filter);
+          }
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /// Renders the template into two writers at once, the slots are rewritten once by the slot style
+  /// and the events are written to both writers, unless a component selects a [Fork.Branch] using the fork.
+  public void render(Writer firstWriter, Writer secondWriter, ComponentStyle slotStyle, Fork fork) throws IOException {
+    Objects.requireNonNull(firstWriter);
+    Objects.requireNonNull(secondWriter);
+    Objects.requireNonNull(slotStyle);
+    Objects.requireNonNull(fork);
+    var firstSerializer = Serializer.serializer(firstWriter, outputKind);
+    var secondSerializer = Serializer.serializer(secondWriter, outputKind);
+    var filter = XML.filter(fork.handler(firstSerializer, secondSerializer), slotStyle);
+    try {
+      for(var chunk : chunks) {
+        switch (chunk) {
+          case Chunk.Static staticChunk -> {
+            // the static parts are already serialized, so each serializer copies its own text
+            staticChunk.render(firstSerializer);
+            staticChunk.render(secondSerializer);
+          }
+          case Chunk.Slot(Node node) -> {
+            filter.reset();
+            fork.reset();
+            node.visit(filter);
+          }
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+}
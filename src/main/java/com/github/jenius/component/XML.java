@@ -4,40 +4,42 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.io.Writer;
-import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
-import org.jsoup.parser.Parser;
-
 public class XML {
   interface ContentHandler {
     void declaration(String version, String encoding);
     void startDocument();
     void endDocument();
     void startElement(String name, Map<String,String> attrs);
+
+    /// Starts an element with its attributes as an array of names and values (name0, value0, name1, value1, etc),
+    /// the handler may keep the array so the caller must not modify it.
+    default void startElement(String name, String[] attributes) {
+      startElement(name, CompactMap.attributes(attributes));
+    }
     void endElement(String name);
     void characters(String content);
-  }
-
-  private static abstract class FilterHandler implements ContentHandler {
-    private final ContentHandler delegate;
 
-    private FilterHandler(ContentHandler delegate) {
-      this.delegate = Objects.requireNonNull(delegate);
+    /// Returns true if the content of the element that has just been started is not needed,
+    /// in that case, the producer may send the corresponding endElement directly.
+    default boolean skipContent() {
+      return false;
     }
   }
 
-  private static NodeBuilder delegatingNodeBuilder(FilterHandler filter, ArrayDeque<Action> actionStack) {
-    return new AbstractNodeBuilder(filter, actionStack) {
+  private static NodeBuilder delegatingNodeBuilder(Filter filter) {
+    return new AbstractNodeBuilder(filter) {
       @Override
       public NodeBuilder node(String name, Map<String, String> map, Consumer<? super NodeBuilder> children) {
         Objects.requireNonNull(name);
         Objects.requireNonNull(map);
         Objects.requireNonNull(children);
-        filter.startElement(name, map);
+        filter.startElement(name, CompactMap.toAttributeArray(map));
         children.accept(this);
         filter.endElement(name);
         return this;
@@ -46,12 +48,10 @@ public class XML {
   }
 
   private static abstract class AbstractNodeBuilder implements NodeBuilder {
-    private final FilterHandler filter;
-    private final ArrayDeque<Action> actionStack;
+    private final Filter filter;
 
-    private AbstractNodeBuilder(FilterHandler filter, ArrayDeque<Action> actionStack) {
+    private AbstractNodeBuilder(Filter filter) {
       this.filter = filter;
-      this.actionStack = actionStack;
     }
 
     @Override
@@ -78,179 +78,273 @@ public class XML {
     @Override
     public final void collect(BiConsumer<? super Node, ? super NodeBuilder> consumer) {
       Objects.requireNonNull(consumer);
-      var ignore = (Action.Ignore) actionStack.pop();
+      var name = filter.topName();
+      @SuppressWarnings("unchecked")
+      var attrs = (Map<String, String>) filter.topValue();
+      filter.popIgnore();
       var document = Node.createDocument();
-      var node = document.createNode(ignore.name, ignore.attrs);
-      var action = new Action.Collect(document, node, n -> consumer.accept(n, delegatingNodeBuilder(filter, actionStack)));
-      actionStack.push(action);
+      var node = document.createNode(name, attrs);
+      var collect = new Filter.Collect(node, n -> consumer.accept(n, delegatingNodeBuilder(filter)));
+      filter.push(Filter.COLLECT, null, collect);
     }
 
     @Override
     public final NodeBuilder fragment(Consumer<? super NodeBuilder> children) {
       Objects.requireNonNull(children);
-      children.accept(delegatingNodeBuilder(filter, actionStack));
+      children.accept(delegatingNodeBuilder(filter));
       return this;
     }
 
     @Override
     public final void hide() {
-      var _ = (Action.Ignore) actionStack.pop();
-      actionStack.push(Action.EnumAction.HIDE);
+      filter.popIgnore();
+      filter.push(Filter.HIDE, null, null);
     }
 
     @Override
     public final void around(Consumer<? super NodeBuilder> preBuilder, Consumer<? super NodeBuilder> postBuilder) {
       Objects.requireNonNull(preBuilder);
       Objects.requireNonNull(postBuilder);
-      var action = actionStack.pop();
-      var newName = switch (action) {
-        case Action.Ignore _ -> null;
-        case Action.Replace(String _newName) -> _newName;
-        case Action.EnumAction _, Action.Collect _, Action.Around _ -> throw new IllegalStateException("can not use around here");
+      var newName = switch (filter.peek()) {
+        case Filter.IGNORE -> null;
+        case Filter.REPLACE -> filter.topName();
+        default -> throw new IllegalStateException("can not use around here");
       };
-      preBuilder.accept(delegatingNodeBuilder(filter, actionStack));
-      actionStack.push(new Action.Around(postBuilder, newName));
+      filter.pop();
+      preBuilder.accept(delegatingNodeBuilder(filter));
+      filter.push(Filter.AROUND, newName, postBuilder);
     }
   }
 
-  private sealed interface Action {
-    enum EnumAction implements Action { EMIT, HIDE }
-    record Ignore(String name, Map<String,String> attrs) implements Action {}
-    record Replace(String newName) implements Action {}
-    record Collect(Node document, Node node, Consumer<Node> consumer) implements Action {}
-    record Around(Consumer<? super NodeBuilder> post, String newName) implements Action {}
-  }
+  /// A handler that rewrites the elements using the components of a style.
+  ///
+  /// The action of each open element is stored in a stack of int opcodes with two side arrays,
+  /// one for the names and one for the values, so only the components that collect or
+  /// that use around allocate. A filter can be [reset][#reset()] and used for another document.
+  static final class Filter implements ContentHandler {
+    private static final int NO_ACTION = -1;
+    private static final int EMIT = 0;
+    private static final int HIDE = 1;
+    private static final int IGNORE = 2;         // name: the element name, value: the attributes
+    private static final int REPLACE = 3;        // name: the new name
+    private static final int COLLECT = 4;        // value: a Collect
+    private static final int COLLECT_CHILD = 5;  // value: the collected node
+    private static final int AROUND = 6;         // name: the new name or null, value: the post builder
+
+    private record Collect(Node node, Consumer<Node> consumer) {}
 
-  private static ContentHandler filter(ContentHandler delegate, ComponentStyle style) {
-    var actionsStack = new ArrayDeque<Action>();
-    return new FilterHandler(delegate) {
-      private NodeBuilder rewritingNodeBuilder() {
-        return new AbstractNodeBuilder(this, actionsStack) {
-          private boolean calledOnce;
-
-          @Override
-          public NodeBuilder node(String name, Map<String, String> map, Consumer<? super NodeBuilder> children) {
-            Objects.requireNonNull(name);
-            Objects.requireNonNull(map);
-            Objects.requireNonNull(children);
-            if (calledOnce) {
-              throw new IllegalStateException("this builder has already called once " + name + " " + map);
-            }
-            calledOnce = true;
-            delegate.startElement(name, map);
-            var _ = (Action.Ignore) actionsStack.pop();
-            actionsStack.push(new Action.Replace(name));
-            children.accept(delegatingNodeBuilder(super.filter, actionsStack));
-            return this;
-          }
-        };
-      }
+    private final ContentHandler delegate;
+    private final CompiledStyle style;
+    private int[] opcodes = new int[16];
+    private String[] names = new String[16];
+    private Object[] values = new Object[16];
+    private int size;
+    private String text;            // the pending text of the collected node or null
+    private StringBuilder builder;  // the pending text if there are several parts, or null
+
+    private Filter(ContentHandler delegate, CompiledStyle style) {
+      this.delegate = delegate;
+      this.style = style;
+    }
 
-      @Override
-      public void declaration(String version, String encoding) {
-        delegate.declaration(version, encoding);
+    /// Forgets the elements not yet ended, so the filter can be used for another document.
+    void reset() {
+      Arrays.fill(names, 0, size, null);
+      Arrays.fill(values, 0, size, null);
+      size = 0;
+      text = null;
+      builder = null;
+    }
+
+    // the chunks of a text are collected once, a node would concatenate each of them
+    private void bufferText(String content) {
+      if (text == null) {
+        text = content;
+        return;
+      }
+      if (builder == null) {
+        builder = new StringBuilder(text);
       }
+      builder.append(content);
+    }
 
-      @Override
-      public void startDocument() {
-        delegate.startDocument();
+    private void flushText() {
+      if (text == null) {
+        return;
+      }
+      var content = text;
+      if (builder != null) {
+        content = builder.toString();
+        builder = null;
       }
+      text = null;
+      var node = peek() == COLLECT ? ((Collect) topValue()).node : (Node) topValue();
+      node.appendText(content);
+    }
 
-      @Override
-      public void endDocument() {
-        delegate.endDocument();
+    private void push(int opcode, String name, Object value) {
+      if (size == opcodes.length) {
+        opcodes = Arrays.copyOf(opcodes, size << 1);
+        names = Arrays.copyOf(names, size << 1);
+        values = Arrays.copyOf(values, size << 1);
       }
+      opcodes[size] = opcode;
+      names[size] = name;
+      values[size] = value;
+      size++;
+    }
 
-      @Override
-      public void startElement(String name, Map<String,String> attrs) {
-        var action = actionsStack.peek();
-        if (startElementAction(name, attrs, action) == ApplyStyleResult.DO_NOT_APPLY) {
-          return;
-        }
+    private int peek() {
+      return size == 0 ? NO_ACTION : opcodes[size - 1];
+    }
 
-        var componentOpt = style.lookup(name);
-        if (componentOpt.isPresent()) {
-          var component = componentOpt.orElseThrow();
-          actionsStack.push(new Action.Ignore(name, attrs));
-          component.render(name, attrs, rewritingNodeBuilder());
-        } else {
-          actionsStack.push(Action.EnumAction.EMIT);
-          delegate.startElement(name, attrs);
-        }
-      }
+    private String topName() {
+      return names[size - 1];
+    }
 
-      @Override
-      public void characters(String content) {
-        var action = Objects.requireNonNull(actionsStack.peek());
-        charactersAction(content, action);
-      }
+    private Object topValue() {
+      return values[size - 1];
+    }
 
-      @Override
-      public void endElement(String name) {
-        var action = actionsStack.pop();
-        endElementAction(name, action);
+    private void pop() {
+      if (size == 0) {
+        throw new IllegalStateException("no element started");
       }
+      size--;
+      names[size] = null;
+      values[size] = null;
+    }
 
-      private enum ApplyStyleResult { DO_APPLY, DO_NOT_APPLY }
+    // the action of an element is changed by its component
+    private void popIgnore() {
+      if (peek() != IGNORE) {
+        throw new IllegalStateException("the element has already been rendered");
+      }
+      pop();
+    }
 
-      private ApplyStyleResult startElementAction(String name, Map<String, String> attrs, Action action) {
-        return switch (action) {
-          case null -> ApplyStyleResult.DO_APPLY;  // no action yet
-          case Action.EnumAction.EMIT -> ApplyStyleResult.DO_APPLY;
-          case Action.EnumAction.HIDE -> {
-            actionsStack.push(Action.EnumAction.HIDE);
-            yield ApplyStyleResult.DO_NOT_APPLY;
-          }
-          case Action.Ignore _, Action.Replace _, Action.Around _ -> ApplyStyleResult.DO_APPLY;
-          case Action.Collect(Node document, Node node, _) -> {
-            var newNode = document.createNode(name, attrs);
-            node.appendChild(newNode);
-            actionsStack.push(new Action.Collect(document, newNode, null));
-            yield ApplyStyleResult.DO_NOT_APPLY;
+    private NodeBuilder rewritingNodeBuilder() {
+      return new AbstractNodeBuilder(this) {
+        private boolean calledOnce;
+
+        @Override
+        public NodeBuilder node(String name, Map<String, String> map, Consumer<? super NodeBuilder> children) {
+          Objects.requireNonNull(name);
+          Objects.requireNonNull(map);
+          Objects.requireNonNull(children);
+          if (calledOnce) {
+            throw new IllegalStateException("this builder has already called once " + name + " " + map);
           }
-        };
-      }
+          calledOnce = true;
+          delegate.startElement(name, CompactMap.toAttributeArray(map));
+          popIgnore();
+          push(REPLACE, name, null);
+          children.accept(delegatingNodeBuilder(Filter.this));
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public void declaration(String version, String encoding) {
+      delegate.declaration(version, encoding);
+    }
+
+    @Override
+    public void startDocument() {
+      delegate.startDocument();
+    }
+
+    @Override
+    public void endDocument() {
+      delegate.endDocument();
+    }
+
+    @Override
+    public void startElement(String name, Map<String,String> attrs) {
+      startElement(name, CompactMap.toAttributeArray(attrs));
+    }
 
-      private void charactersAction(String content, Action action) {
-        switch (action) {
-          case Action.EnumAction.EMIT -> delegate.characters(content);
-          case Action.EnumAction.HIDE -> {}
-          case Action.Ignore _ -> {}
-          case Action.Replace _, Action.Around _ -> delegate.characters(content);
-          case Action.Collect(_, Node node, _) -> node.appendText(content);
+    @Override
+    public void startElement(String name, String[] attributes) {
+      flushText();
+      switch (peek()) {
+        case HIDE -> {
+          push(HIDE, null, null);
+          return;
         }
+        case COLLECT, COLLECT_CHILD -> {
+          var parent = peek() == COLLECT ? ((Collect) topValue()).node : (Node) topValue();
+          var node = parent.createNode(name, CompactMap.attributes(attributes));
+          parent.appendChild(node);
+          push(COLLECT_CHILD, null, node);
+          return;
+        }
+        default -> {}  // the style is applied
       }
 
-      private void endElementAction(String name, Action action) {
-        switch (action) {
-          case Action.EnumAction.EMIT -> delegate.endElement(name);
-          case Action.EnumAction.HIDE -> {}
-          case Action.Ignore _ -> {}
-          case Action.Replace(String newName) -> delegate.endElement(newName);
-          case Action.Collect(_, Node node, Consumer<Node> consumer) -> {
-            if (consumer != null) {
-              consumer.accept(node);
-            }
-          }
-          case Action.Around(Consumer<? super NodeBuilder> postConsumer, String newName) -> {
-            postConsumer.accept(delegatingNodeBuilder(this, actionsStack));
-            if (newName != null) {
-              delegate.endElement(newName);
-            }
+      var component = style.component(name);
+      if (component != null) {
+        // a map is only created if a component needs it
+        var attrs = CompactMap.attributes(attributes);
+        push(IGNORE, name, attrs);
+        component.render(name, attrs, rewritingNodeBuilder());
+      } else {
+        push(EMIT, null, null);
+        delegate.startElement(name, attributes);
+      }
+    }
+
+    @Override
+    public void characters(String content) {
+      switch (peek()) {
+        case EMIT, REPLACE, AROUND -> delegate.characters(content);
+        case HIDE, IGNORE -> {}
+        case COLLECT, COLLECT_CHILD -> bufferText(content);
+        default -> throw new IllegalStateException("no element started");
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void endElement(String name) {
+      flushText();
+      var opcode = peek();
+      var newName = opcode == NO_ACTION ? null : topName();
+      var value = opcode == NO_ACTION ? null : topValue();
+      pop();
+      switch (opcode) {
+        case EMIT -> delegate.endElement(name);
+        case HIDE, IGNORE, COLLECT_CHILD -> {}
+        case REPLACE -> delegate.endElement(newName);
+        case COLLECT -> {
+          var collect = (Collect) value;
+          collect.consumer.accept(collect.node);
+        }
+        case AROUND -> {
+          ((Consumer<? super NodeBuilder>) value).accept(delegatingNodeBuilder(this));
+          if (newName != null) {
+            delegate.endElement(newName);
           }
         }
+        default -> throw new AssertionError();
       }
-    };
-  }
+    }
 
-  private static void include(FilterHandler filter, Reader reader) {
-    org.jsoup.nodes.Document document;
-    try {
-      document = parseXML(reader);
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
+    @Override
+    public boolean skipContent() {
+      // the content of a hidden element is hidden too
+      return peek() == HIDE;
     }
-    Node.visit(document, new ContentHandler() {
+  }
+
+  static Filter filter(ContentHandler delegate, ComponentStyle style) {
+    Objects.requireNonNull(delegate);
+    return new Filter(delegate, CompiledStyle.compile(style));
+  }
+
+  private static void include(Filter filter, Reader reader) {
+    var handler = new ContentHandler() {
       @Override
       public void declaration(String version, String encoding) {}
       @Override
@@ -263,6 +357,11 @@ public class XML {
         filter.startElement(name, attrs);
       }
 
+      @Override
+      public void startElement(String name, String[] attributes) {
+        filter.startElement(name, attributes);
+      }
+
       @Override
       public void endElement(String name) {
         filter.endElement(name);
@@ -272,24 +371,39 @@ public class XML {
       public void characters(String content) {
         filter.characters(content);
       }
-    });
+    };
+    try {
+      XMLTokenizer.parse(reader, handler);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   public enum OutputKind {
     HTML, XML
   }
 
-  private static org.jsoup.nodes.Document rewrite(org.jsoup.nodes.Document document, ComponentStyle style) {
-    var result = new org.jsoup.nodes.Document("");
+  private static Node rewrite(Node document, ComponentStyle style) {
+    var result = Node.createDocument();
     var filter = filter(Node.asContentHandler(result), style);
-    Node.visit(document, filter);
+    document.visit(filter);
     return result;
   }
 
-  private static org.jsoup.nodes.Document parseXML(Reader reader) throws IOException {
-    var parser = Parser.xmlParser();
+  // the rewritten document is written on the fly, it is never fully stored in memory
+  private static void serialize(Node document, Writer writer, OutputKind outputKind, ComponentStyle style) throws IOException {
+    var filter = filter(Serializer.serializer(writer, outputKind), style);
     try {
-      return parser.parseInput(reader, "");
+      document.visit(filter);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  // the events are sent by the tokenizer, no intermediary tree is created
+  private static void parse(Reader reader, ContentHandler handler) throws IOException {
+    try {
+      XMLTokenizer.parse(reader, handler);
     } catch (UncheckedIOException e) {
       throw e.getCause();
     }
@@ -297,13 +411,17 @@ public class XML {
 
   public static Node transform(Reader reader) throws IOException {
     Objects.requireNonNull(reader);
-    return new Node(parseXML(reader));
+    var document = Node.createDocument();
+    parse(reader, Node.asContentHandler(document));
+    return document;
   }
 
   public static Node transform(Reader reader, ComponentStyle style) throws IOException {
     Objects.requireNonNull(reader);
     Objects.requireNonNull(style);
-    return new Node(rewrite(parseXML(reader), style));
+    var result = Node.createDocument();
+    parse(reader, filter(Node.asContentHandler(result), style));
+    return result;
   }
 
   public static void transform(Reader reader, Writer writer, OutputKind outputKind, ComponentStyle style) throws IOException {
@@ -311,19 +429,13 @@ public class XML {
     Objects.requireNonNull(writer);
     Objects.requireNonNull(outputKind);
     Objects.requireNonNull(style);
-    var result = rewrite(parseXML(reader), style);
-    result.outputSettings().indentAmount(2);
-    result.outputSettings().syntax(switch (outputKind) {
-      case XML -> org.jsoup.nodes.Document.OutputSettings.Syntax.xml;
-      case HTML -> org.jsoup.nodes.Document.OutputSettings.Syntax.html;
-    });
-    writer.write(result.outerHtml());
+    parse(reader, filter(Serializer.serializer(writer, outputKind), style));
   }
 
   public static Node transform(Node document, ComponentStyle style) {
     Objects.requireNonNull(document);
     Objects.requireNonNull(style);
-    return new Node(rewrite((org.jsoup.nodes.Document) document.jsoupNode, style));
+    return rewrite(document, style);
   }
 
   public static void transform(Node document, Writer writer, OutputKind outputKind, ComponentStyle style) throws IOException {
@@ -331,12 +443,6 @@ public class XML {
     Objects.requireNonNull(writer);
     Objects.requireNonNull(outputKind);
     Objects.requireNonNull(style);
-    var result = rewrite((org.jsoup.nodes.Document) document.jsoupNode, style);
-    result.outputSettings().indentAmount(2);
-    result.outputSettings().syntax(switch (outputKind) {
-      case XML -> org.jsoup.nodes.Document.OutputSettings.Syntax.xml;
-      case HTML -> org.jsoup.nodes.Document.OutputSettings.Syntax.html;
-    });
-    writer.write(result.outerHtml());
+    serialize(document, writer, outputKind, style);
   }
 }
@@ -0,0 +1,599 @@
+package com.github.jenius.component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.jsoup.nodes.Entities;
+
+/// A streaming tokenizer of the XML documents, the events are sent directly to a [XML.ContentHandler],
+/// no tree is created.
+///
+/// The tokenizer sends the same events as the jsoup XML parser followed by [Node#visit],
+/// including the recovery of the malformed documents:
+/// the comments, the DOCTYPE and the text outside the root element are ignored,
+/// a CDATA section is sent as characters, the entities are the HTML ones,
+/// an end tag closes all the elements opened after the element of the same name
+/// and an end tag without start tag is ignored.
+final class XMLTokenizer {
+  // replacement of the numeric references from 0x80 to 0x9F, see the HTML spec
+  private static final char[] WINDOWS_1252 = {
+      '\u20AC', '\u0081', '\u201A', '\u0192', '\u201E', '\u2026', '\u2020', '\u2021',
+      '\u02C6', '\u2030', '\u0160', '\u2039', '\u0152', '\u008D', '\u017D', '\u008F',
+      '\u0090', '\u2018', '\u2019', '\u201C', '\u201D', '\u2022', '\u2013', '\u2014',
+      '\u02DC', '\u2122', '\u0161', '\u203A', '\u0153', '\u009D', '\u017E', '\u0178'
+  };
+
+  private enum TagKind { START, END, DECLARATION }
+
+  private final char[] buffer;
+  private final int limit;
+  private final XML.ContentHandler handler;
+  private int pos;
+
+  // the names of the opened elements
+  private final ArrayList<String> elements = new ArrayList<>();
+
+  // the pending text is the content of the builder followed by the raw characters from rawStart to rawEnd
+  private final StringBuilder textBuilder = new StringBuilder();
+  private int rawStart = -1;
+  private int rawEnd;
+
+  // the tag being tokenized
+  private String tagName;
+  private boolean selfClosing;
+  private String[] attributes = new String[8];
+  private int attributeCount;
+  private String attributeValue;
+  private final StringBuilder valueBuilder = new StringBuilder();
+
+  // the element and attribute names already seen
+  private final Symbols.Cache names = new Symbols.Cache();
+
+  private XMLTokenizer(char[] buffer, int limit, XML.ContentHandler handler) {
+    this.buffer = buffer;
+    this.limit = limit;
+    this.handler = handler;
+  }
+
+  /// Sends the events of the document contained in the characters from 0 to length to the handler.
+  static void parse(char[] buffer, int length, XML.ContentHandler handler) {
+    Objects.checkFromIndexSize(0, length, buffer.length);
+    Objects.requireNonNull(handler);
+    new XMLTokenizer(buffer, length, handler).parse();
+  }
+
+  /// Sends the events of the document read by the reader to the handler.
+  static void parse(Reader reader, XML.ContentHandler handler) throws IOException {
+    Objects.requireNonNull(reader);
+    Objects.requireNonNull(handler);
+    var buffer = new char[8192];
+    var length = 0;
+    int read;
+    while((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length << 1);
+      }
+    }
+    parse(buffer, length, handler);
+  }
+
+  private void parse() {
+    handler.startDocument();
+    while(pos < limit) {
+      switch (buffer[pos]) {
+        case '<' -> markup();
+        case '&' -> {
+          var decoded = reference(false, '\0');
+          if (decoded == null) {
+            appendRaw(pos, ++pos);
+          } else {
+            appendDecoded(decoded);
+          }
+        }
+        default -> {
+          var start = pos;
+          while(pos < limit && buffer[pos] != '<' && buffer[pos] != '&') {
+            pos++;
+          }
+          appendRaw(start, pos);
+        }
+      }
+    }
+    flushText();
+    for(var i = elements.size(); --i >= 0;) {
+      handler.endElement(elements.remove(i));
+    }
+    handler.endDocument();
+  }
+
+  private void appendRaw(int start, int end) {
+    if (rawStart != -1 && rawEnd == start) {
+      rawEnd = end;
+      return;
+    }
+    copyRaw();
+    rawStart = start;
+    rawEnd = end;
+  }
+
+  private void copyRaw() {
+    if (rawStart != -1) {
+      textBuilder.append(buffer, rawStart, rawEnd - rawStart);
+      rawStart = -1;
+    }
+  }
+
+  private void appendDecoded(String decoded) {
+    copyRaw();
+    textBuilder.append(decoded);
+  }
+
+  // a text outside the root element is not sent
+  private void flushText() {
+    if (textBuilder.isEmpty()) {
+      if (rawStart != -1) {
+        if (!elements.isEmpty()) {
+          handler.characters(new String(buffer, rawStart, rawEnd - rawStart));
+        }
+        rawStart = -1;
+      }
+      return;
+    }
+    copyRaw();
+    if (!elements.isEmpty()) {
+      handler.characters(textBuilder.toString());
+    }
+    textBuilder.setLength(0);
+  }
+
+  private boolean matches(int index, String text) {
+    if (index + text.length() > limit) {
+      return false;
+    }
+    for(var i = 0; i < text.length(); i++) {
+      if (buffer[index + i] != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matchesIgnoreCase(int index, String text) {
+    if (index + text.length() > limit) {
+      return false;
+    }
+    for(var i = 0; i < text.length(); i++) {
+      if (Character.toUpperCase(buffer[index + i]) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int indexOf(String text, int from) {
+    for(var i = from; i < limit; i++) {
+      if (matches(i, text)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHexDigit(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+
+  private void markup() {
+    var next = pos + 1;
+    var c = next < limit ? buffer[next] : '\0';
+    switch (c) {
+      case '!' -> markupDeclaration(next + 1);
+      case '/' -> endTag(next + 1);
+      case '?' -> {
+        if (next + 1 < limit && isAsciiLetter(buffer[next + 1])) {
+          tag(next + 1, TagKind.DECLARATION);
+        } else {
+          bogusComment(next);
+        }
+      }
+      default -> {
+        if (isAsciiLetter(c)) {
+          tag(next, TagKind.START);
+        } else {  // not a tag
+          appendRaw(pos, ++pos);
+        }
+      }
+    }
+  }
+
+  private void markupDeclaration(int start) {
+    if (matches(start, "--")) {
+      flushText();
+      pos = commentEnd(start + 2);
+      return;
+    }
+    if (matchesIgnoreCase(start, "DOCTYPE")) {
+      flushText();
+      pos = doctypeEnd(start + 7);
+      return;
+    }
+    if (matches(start, "[CDATA[")) {
+      flushText();
+      var contentStart = start + 7;
+      var end = indexOf("]]>", contentStart);
+      var contentEnd = end == -1 ? limit : end;
+      if (!elements.isEmpty()) {
+        handler.characters(new String(buffer, contentStart, contentEnd - contentStart));
+      }
+      pos = end == -1 ? limit : end + 3;
+      return;
+    }
+    if (start < limit && isAsciiLetter(buffer[start])) {
+      tag(start, TagKind.DECLARATION);
+      return;
+    }
+    bogusComment(start);
+  }
+
+  private int skipTo(char c, int from) {
+    for(var i = from; i < limit; i++) {
+      if (buffer[i] == c) {
+        return i + 1;
+      }
+    }
+    return limit;
+  }
+
+  // like jsoup, the character after DOCTYPE is skipped and the first character of the name can be '>'
+  private int doctypeEnd(int start) {
+    if (start == limit) {
+      return limit;
+    }
+    if (buffer[start] == '>') {
+      return start + 1;
+    }
+    var index = start + 1;
+    while(index < limit && isWhitespace(buffer[index])) {
+      index++;
+    }
+    if (index < limit && buffer[index] == '>') {
+      index++;
+    }
+    return skipTo('>', index);
+  }
+
+  // a comment ends with "-->" or "--!>", "<!-->" and "<!--->" are empty comments
+  private int commentEnd(int start) {
+    if (matches(start, ">")) {
+      return start + 1;
+    }
+    if (matches(start, "->")) {
+      return start + 2;
+    }
+    for(var i = start; (i = indexOf("--", i)) != -1; i++) {
+      var end = i + 2;
+      while(end < limit && buffer[end] == '-') {
+        end++;
+      }
+      if (matches(end, ">")) {
+        return end + 1;
+      }
+      if (matches(end, "!>")) {
+        return end + 2;
+      }
+    }
+    return limit;
+  }
+
+  private void bogusComment(int start) {
+    flushText();
+    pos = skipTo('>', start);
+  }
+
+  private void endTag(int start) {
+    if (start >= limit) {  // "</" at the end
+      appendRaw(pos, limit);
+      pos = limit;
+      return;
+    }
+    var c = buffer[start];
+    if (c == '>') {  // "</>" is ignored
+      pos = start + 1;
+      return;
+    }
+    if (!isAsciiLetter(c)) {
+      bogusComment(start);
+      return;
+    }
+    tag(start, TagKind.END);
+  }
+
+  private void tag(int start, TagKind kind) {
+    flushText();
+    var end = tagName(start, kind);
+    if (end == -1) {  // unfinished tag, ignored
+      pos = limit;
+      return;
+    }
+    pos = end;
+    switch (kind) {
+      case START -> {
+        var attrs = attributeCount == 0 ? CompactMap.NO_ATTRIBUTES : Arrays.copyOf(attributes, attributeCount << 1);
+        elements.add(tagName);
+        handler.startElement(tagName, attrs);
+        if (selfClosing) {
+          elements.removeLast();
+          handler.endElement(tagName);
+        }
+      }
+      case END -> {
+        var index = elements.lastIndexOf(tagName);
+        if (index != -1) {
+          for(var i = elements.size(); --i >= index;) {
+            handler.endElement(elements.remove(i));
+          }
+        }
+      }
+      case DECLARATION -> handler.declaration(attribute("version"), attribute("encoding"));
+    }
+  }
+
+  private String attribute(String name) {
+    for(var i = 0; i < attributeCount; i++) {
+      if (attributes[i << 1].equals(name)) {
+        return attributes[(i << 1) + 1];
+      }
+    }
+    return "";
+  }
+
+  private void addAttribute(String name, String value, TagKind kind) {
+    for(var i = 0; i < attributeCount; i++) {
+      if (attributes[i << 1].equals(name)) {
+        // like jsoup, the first attribute of an element wins, the last attribute of a declaration wins
+        if (kind == TagKind.DECLARATION) {
+          attributes[(i << 1) + 1] = value;
+        }
+        return;
+      }
+    }
+    if (attributeCount << 1 == attributes.length) {
+      attributes = Arrays.copyOf(attributes, attributes.length << 1);
+    }
+    attributes[attributeCount << 1] = name;
+    attributes[(attributeCount << 1) + 1] = value;
+    attributeCount++;
+  }
+
+  // tokenizes the tag (following the state machine of the HTML spec), returns the index after the tag
+  // or -1 if the tag is not finished
+  private int tagName(int start, TagKind kind) {
+    attributeCount = 0;
+    selfClosing = false;
+    var index = start;
+    while(index < limit) {
+      var c = buffer[index];
+      if (isWhitespace(c) || c == '/' || c == '>') {
+        break;
+      }
+      index++;
+    }
+    if (index == limit) {
+      return -1;
+    }
+    tagName = names.name(buffer, start, index);
+    return attributes(index, kind);
+  }
+
+  private boolean isSelfClosing(char c, TagKind kind) {
+    return c == '/' || (c == '?' && kind == TagKind.DECLARATION);
+  }
+
+  private int attributes(int start, TagKind kind) {
+    var index = start;
+    for(;;) {
+      // before attribute name
+      while(index < limit && isWhitespace(buffer[index])) {
+        index++;
+      }
+      if (index == limit) {
+        return -1;
+      }
+      var c = buffer[index];
+      if (c == '>') {
+        return index + 1;
+      }
+      if (isSelfClosing(c, kind)) {
+        index++;
+        if (index == limit) {
+          return -1;
+        }
+        if (buffer[index] == '>') {
+          selfClosing = true;
+          return index + 1;
+        }
+        continue;
+      }
+
+      // attribute name
+      var nameStart = index++;
+      while(index < limit) {
+        c = buffer[index];
+        if (isWhitespace(c) || c == '=' || c == '>' || c == '/' || (c == '?' && kind == TagKind.DECLARATION)) {
+          break;
+        }
+        index++;
+      }
+      var name = names.name(buffer, nameStart, index);  // few different names
+      if (index < limit && buffer[index] == '?') {  // like jsoup, ends the name of an attribute of a declaration
+        index++;
+      }
+
+      // after attribute name
+      while(index < limit && isWhitespace(buffer[index])) {
+        index++;
+      }
+      if (index == limit) {
+        return -1;
+      }
+      if (buffer[index] != '=') {
+        addAttribute(name, "", kind);
+        continue;
+      }
+      index++;
+
+      // before attribute value
+      while(index < limit && isWhitespace(buffer[index])) {
+        index++;
+      }
+      if (index == limit) {  // jsoup emits the tag
+        addAttribute(name, "", kind);
+        return limit;
+      }
+      c = buffer[index];
+      if (c == '>') {
+        addAttribute(name, "", kind);
+        return index + 1;
+      }
+      if (c == '"' || c == '\'') {
+        index = attributeValue(index + 1, c);
+        if (index == -1) {
+          return -1;
+        }
+        index++;  // skip the quote
+      } else {
+        index = attributeValue(index, '\0');
+        if (index == -1) {
+          return -1;
+        }
+      }
+      addAttribute(name, attributeValue, kind);
+    }
+  }
+
+  // decodes the attribute value, returns the index of the character after the value
+  // or -1 if the value is not finished
+  private int attributeValue(int start, char quote) {
+    valueBuilder.setLength(0);
+    var index = start;
+    var runStart = start;
+    while(index < limit) {
+      var c = buffer[index];
+      if (quote != '\0' ? c == quote : isWhitespace(c) || c == '>') {
+        if (valueBuilder.isEmpty()) {
+          attributeValue = new String(buffer, runStart, index - runStart);
+        } else {
+          attributeValue = valueBuilder.append(buffer, runStart, index - runStart).toString();
+        }
+        return index;
+      }
+      if (c == '&') {
+        pos = index;
+        var decoded = reference(true, quote != '\0' ? quote : '>');
+        if (decoded != null) {
+          valueBuilder.append(buffer, runStart, index - runStart).append(decoded);
+          index = runStart = pos;
+          continue;
+        }
+      }
+      index++;
+    }
+    return -1;
+  }
+
+  // decodes the character reference at pos, returns null if there is no reference,
+  // follows the rules of the HTML spec, a named reference may not end with a semicolon
+  private String reference(boolean inAttribute, char allowedCharacter) {
+    var index = pos + 1;
+    if (index == limit) {
+      return null;
+    }
+    var c = buffer[index];
+    if (isWhitespace(c) || c == '<' || c == '&' || c == allowedCharacter) {
+      return null;
+    }
+    if (c == '#') {
+      return numericReference(index + 1);
+    }
+
+    var nameStart = index;
+    while(index < limit && isAsciiLetter(buffer[index])) {
+      index++;
+    }
+    while(index < limit && isDigit(buffer[index])) {
+      index++;
+    }
+    var name = new String(buffer, nameStart, index - nameStart);
+    var semicolon = index < limit && buffer[index] == ';';
+    if (!(Entities.isBaseNamedEntity(name) || (semicolon && Entities.isNamedEntity(name)))) {
+      if (inAttribute) {
+        return null;
+      }
+      name = Entities.findPrefix(name);
+      if (name.isEmpty()) {
+        return null;
+      }
+      index = nameStart + name.length();
+    }
+    if (inAttribute && index < limit) {
+      c = buffer[index];
+      if (isAsciiLetter(c) || isDigit(c) || c == '=' || c == '-' || c == '_') {
+        return null;
+      }
+    }
+    if (index < limit && buffer[index] == ';') {
+      index++;
+    }
+    pos = index;
+    return Entities.getByName(name);
+  }
+
+  private String numericReference(int start) {
+    var index = start;
+    var hex = index < limit && (buffer[index] == 'x' || buffer[index] == 'X');
+    if (hex) {
+      index++;
+    }
+    var digitStart = index;
+    while(index < limit && (hex ? isHexDigit(buffer[index]) : isDigit(buffer[index]))) {
+      index++;
+    }
+    if (index == digitStart) {
+      return null;
+    }
+    var codePoint = 0;
+    for(var i = digitStart; i < index && codePoint != -1; i++) {
+      codePoint = codePoint * (hex ? 16 : 10) + Character.digit(buffer[i], 16);
+      if (codePoint > Character.MAX_CODE_POINT) {
+        codePoint = -1;  // too big
+      }
+    }
+    if (index < limit && buffer[index] == ';') {
+      index++;
+    }
+    pos = index;
+    if (codePoint == -1 || codePoint == 0 || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+      return "\uFFFD";  // too big, NUL or a lone surrogate
+    }
+    if (codePoint >= 0x80 && codePoint < 0x80 + WINDOWS_1252.length) {
+      return String.valueOf(WINDOWS_1252[codePoint - 0x80]);
+    }
+    return Character.toString(codePoint);
+  }
+}
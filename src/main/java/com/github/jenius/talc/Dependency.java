@@ -0,0 +1,42 @@
+package com.github.jenius.talc;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/// A source file a generated page depends on.
+/// The kind of dependency tells which part of the source file is used by the page,
+/// so a page is not generated again if an unused part of the source changes.
+public record Dependency(Kind kind, Path path) {
+  public enum Kind {
+    /// the whole content of the file (the template, a file included by a `srcref`)
+    CONTENT,
+    /// the title of the document (the breadcrumb)
+    TITLE,
+    /// the title and the exercise titles of the document (a `tdref` or a `dir`)
+    SUMMARY
+  }
+
+  public Dependency {
+    Objects.requireNonNull(kind);
+    Objects.requireNonNull(path);
+  }
+
+  private static long hash(String text) {
+    var crc = new CRC32C();
+    crc.update(text.getBytes(StandardCharsets.UTF_8));
+    return crc.getValue();
+  }
+
+  long fingerprint(DocumentManager manager) {
+    return switch (kind) {
+      case CONTENT -> manager.getContentHash(path);
+      case TITLE -> hash(manager.getMetadata(path).summary().title());
+      case SUMMARY -> {
+        var summary = manager.getMetadata(path).summary();
+        yield hash(summary.title() + "\n" + String.join("\n", summary.subsections()));
+      }
+    };
+  }
+}
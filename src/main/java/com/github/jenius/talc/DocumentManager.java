@@ -1,6 +1,5 @@
 package com.github.jenius.talc;
 
-import com.github.jenius.component.ComponentStyle;
 import com.github.jenius.component.Node;
 import com.github.jenius.component.XML;
 
@@ -8,21 +7,29 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Predicate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class DocumentManager {
   private final Path root;
-  private final HashMap<Path, Metadata.File> fileMetadataMap = new HashMap<>();
-  private final HashMap<Path, Metadata> metadataMap = new HashMap<>();
+  private final SummaryIndex summaryIndex;
+  private final ConcurrentHashMap<Path, CompletableFuture<Metadata.File>> fileMetadataMap = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Path, CompletableFuture<Metadata>> metadataMap = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Path, CompletableFuture<Long>> contentHashMap = new ConcurrentHashMap<>();
 
   public DocumentManager(Path root) {
+    this(root, SummaryIndex.empty());
+  }
+
+  public DocumentManager(Path root, SummaryIndex summaryIndex) {
     this.root = Objects.requireNonNull(root);
+    this.summaryIndex = Objects.requireNonNull(summaryIndex);
   }
 
   static Node readPathAsDocument(Path path) throws IOException {
@@ -34,30 +41,93 @@ public final class DocumentManager {
     }
   }
 
-  static Optional<Summary> extractSummary(Node document) {
-      var node = XML.transform(document, ComponentStyle.of(Map.of(
-          "td", (_, _, b) -> b.node("td"),
-          "index", (_, _, b) -> b.node("index"),
-          "title", (_, _, b) -> b.node("title"),
-          "exercise", (_, attrs, b) ->
-              b.node("exercise", "title", attrs.getOrDefault("title", ""))
-      )).ignoreAllOthers());
-      var tdOpt = node.getFirstElement();
-      if (tdOpt.isEmpty()) {
-        return Optional.empty();
+  // the summary, the title and the infos of a document, found in a single walk
+  private static final class DocumentScan {
+    private Node summaryRoot;  // first element named td, index, title or exercise
+    private Node summaryTitle;
+    private final ArrayList<String> exercises = new ArrayList<>();
+    private Node title;
+    private Node infos;
+
+    // the state of an element being walked, summaryParent is the closest enclosing summary element or null
+    private record Frame(Node.ChildCursor cursor, Node summaryParent, boolean inSummaryRoot, boolean inTitle, boolean inInfos) {}
+
+    // the summary only sees the elements td, index, title and exercise,
+    // like with find(), a title (or an infos) wins over the previous ones but not over an enclosing one,
+    // the elements are walked in document order with a stack, so a deep document does not overflow the stack
+    private void walk(Node document) {
+      var stack = new ArrayDeque<Frame>();
+      stack.push(new Frame(document.childCursor(), null, false, false, false));
+      while(!stack.isEmpty()) {
+        var frame = stack.peek();
+        var cursor = frame.cursor;
+        if (!cursor.next()) {
+          stack.pop();
+          continue;
+        }
+        if (!cursor.isElement()) {
+          continue;
+        }
+        var name = cursor.name();
+        var element = cursor.node();
+        var summaryParent = frame.summaryParent;
+        var isSummaryElement = switch (name) {
+          case "td", "index", "title", "exercise" -> true;
+          default -> false;
+        };
+        var isSummaryRoot = false;
+        if (isSummaryElement && summaryParent == null && summaryRoot == null) {
+          summaryRoot = element;
+          isSummaryRoot = true;
+        }
+        switch (name) {
+          case "title" -> {
+            if (!frame.inTitle) {
+              title = element;
+              if (frame.inSummaryRoot || isSummaryRoot) {
+                summaryTitle = element;
+              }
+            }
+          }
+          case "exercise" -> {
+            if (summaryParent != null && summaryParent == summaryRoot) {
+              var exercise = element.attributes().getOrDefault("title", "").strip();
+              if (!exercise.isEmpty()) {
+                exercises.add(exercise);
+              }
+            }
+          }
+          case "infos" -> {
+            if (!frame.inInfos && !frame.inTitle) {
+              infos = element;
+            }
+          }
+          default -> {}
+        }
+        stack.push(new Frame(element.childCursor(),
+            isSummaryElement ? element : summaryParent,
+            frame.inSummaryRoot || isSummaryRoot,
+            frame.inTitle || name.equals("title"),
+            frame.inInfos || name.equals("infos")));
       }
-      var td = tdOpt.orElseThrow();
-      var titleOpt = td.find("title");
-      if (titleOpt.isEmpty()) {
+    }
+
+    static DocumentScan scan(Node document) {
+      var scan = new DocumentScan();
+      scan.walk(document);
+      return scan;
+    }
+
+    Optional<Summary> summary() {
+      if (summaryTitle == null) {
         return Optional.empty();
       }
-      var title = titleOpt.orElseThrow().text().strip();
-      var exercises = td.childNodes().stream()
-            .filter(n -> n.name().equals("exercise"))
-            .map(n -> n.attributes().getOrDefault("title", "").strip())
-            .filter(Predicate.not(String::isEmpty))
-            .toList();
-      return Optional.of(new Summary(title, exercises));
+      return Optional.of(new Summary(summaryTitle.text().strip(), exercises));
+    }
+  }
+
+  static Optional<Summary> extractSummary(Node document) {
+    return DocumentScan.scan(document).summary();
   }
 
   static Summary defaultSummary(Optional<Summary> summaryOpt, String filename) {
@@ -89,47 +159,134 @@ public final class DocumentManager {
     return new BreadCrumb(names.reversed(), hrefs.reversed());
   }
 
-  public Metadata getMetadata(Path path) {
+  /// Forgets everything known about a path (and about the paths inside if it is a directory)
+  public void invalidate(Path path) {
     Objects.requireNonNull(path);
-    return metadataMap.computeIfAbsent(path, p -> {
-      Path file;
-      if (Files.isDirectory(p)) {
-        var index = p.resolve("index.xumlv");
-        if (!Files.exists(index)) {
-          var dirName = Utils.removeExtension(p.getFileName().toString());
-          return new Metadata.Dir(p, new Summary(dirName));
+    fileMetadataMap.keySet().removeIf(p -> p.startsWith(path));
+    metadataMap.keySet().removeIf(p -> p.startsWith(path));
+    contentHashMap.keySet().removeIf(p -> p.startsWith(path));
+    if (path.getFileName().toString().equals("index.xumlv")) {
+      metadataMap.remove(path.getParent());  // the metadata of a directory are the ones of its index
+    }
+  }
+
+  /// Forgets everything known about a file if its content has changed since it was read
+  public void invalidateIfModified(Path path) {
+    Objects.requireNonNull(path);
+    var future = contentHashMap.get(path);
+    if (future == null || !future.isDone()) {
+      return;
+    }
+    long hash;
+    try {
+      hash = Manifest.hash(path);
+    } catch (IOException _) {
+      hash = Manifest.NO_HASH;
+    }
+    if (future.join() != hash) {
+      invalidate(path);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Loader<V> {
+    V load(Path path) throws IOException;
+  }
+
+  // the first caller loads the value, the other callers wait on the same future,
+  // an exception is cached too, so a broken file is only parsed once,
+  // but not an Error (out of memory, stack overflow), the next caller tries again
+  private static <V> V loadOnce(ConcurrentHashMap<Path, CompletableFuture<V>> map, Path path, Loader<? extends V> loader) throws IOException {
+    var future = map.get(path);
+    if (future == null) {
+      var newFuture = new CompletableFuture<V>();
+      future = map.putIfAbsent(path, newFuture);
+      if (future == null) {
+        future = newFuture;
+        try {
+          newFuture.complete(loader.load(path));
+        } catch (IOException | RuntimeException e) {
+          newFuture.completeExceptionally(e);
+        } catch (Error e) {
+          map.remove(path, newFuture);
+          newFuture.completeExceptionally(e);  // do not block the callers already waiting
+          throw e;
         }
-        file = index;
-      } else {
-        file = p;
       }
-      try {
-        return getFileMetadata(file);
-      } catch (IOException _) {
-        var dirName = Utils.removeExtension(file.getFileName().toString());
-        return new Metadata.Dir(file, new Summary(dirName));
+    }
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      // the cached exception is shared, so it is not rethrown but it is the cause of a new exception
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private Metadata loadMetadata(Path path) {
+    Path file;
+    if (Files.isDirectory(path)) {
+      var index = path.resolve("index.xumlv");
+      if (!Files.exists(index)) {
+        var dirName = Utils.removeExtension(path.getFileName().toString());
+        return new Metadata.Dir(path, new Summary(dirName));
       }
-    });
+      file = index;
+    } else {
+      file = path;
+    }
+    var summaryOpt = summaryIndex.get(file, getContentHash(file));
+    if (summaryOpt.isPresent()) {  // no need to parse
+      return new Metadata.Indexed(file, summaryOpt.orElseThrow());
+    }
+    try {
+      return getFileMetadata(file);
+    } catch (IOException _) {
+      var dirName = Utils.removeExtension(file.getFileName().toString());
+      return new Metadata.Dir(file, new Summary(dirName));
+    }
+  }
+
+  private Metadata.File loadFileMetadata(Path path) throws IOException {
+    var document = readPathAsDocument(path);
+    var scan = DocumentScan.scan(document);
+    var summary = defaultSummary(scan.summary(), path.getFileName().toString());
+    summaryIndex.put(path, getContentHash(path), summary);
+    if (scan.title != null) {
+      scan.title.removeFromParent();  // remove title
+    }
+    var infosOpt = Optional.ofNullable(scan.infos);
+    infosOpt.ifPresent(Node::removeFromParent);  // remove infos
+    return new Metadata.File(path, summary, document, infosOpt);
+  }
+
+  public Metadata getMetadata(Path path) {
+    Objects.requireNonNull(path);
+    try {
+      return loadOnce(metadataMap, path, this::loadMetadata);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);  // loadMetadata has failed
+    }
   }
 
   public Metadata.File getFileMetadata(Path path) throws IOException {
     Objects.requireNonNull(path);
     assert !Files.isDirectory(path);
+    return loadOnce(fileMetadataMap, path, this::loadFileMetadata);
+  }
+
+  /// Returns the hash of the content of the file or [Manifest#NO_HASH] if the file can not be read
+  public long getContentHash(Path path) {
+    Objects.requireNonNull(path);
     try {
-      return fileMetadataMap.computeIfAbsent(path, p -> {
+      return loadOnce(contentHashMap, path, p -> {
         try {
-          var document = readPathAsDocument(p);
-          var summary = defaultSummary(extractSummary(document), p.getFileName().toString());
-          document.find("title").ifPresent(Node::removeFromParent);  // remove title
-          var infosOpt = document.find("infos");
-          infosOpt.ifPresent(Node::removeFromParent);  // remove infos
-          return new Metadata.File(p, summary, document, infosOpt);
-        } catch (IOException e) {
-          throw new UncheckedIOException(e);
+          return Manifest.hash(p);
+        } catch (IOException _) {
+          return Manifest.NO_HASH;
         }
       });
-    } catch (UncheckedIOException e) {
-      throw e.getCause();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
   }
 }
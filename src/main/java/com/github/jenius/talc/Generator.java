@@ -2,28 +2,49 @@ package com.github.jenius.talc;
 
 import com.github.jenius.component.Component;
 import com.github.jenius.component.ComponentStyle;
+import com.github.jenius.component.Fork;
 import com.github.jenius.component.Node;
+import com.github.jenius.component.Template;
 import com.github.jenius.component.XML;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.UnaryOperator;
 
 import static java.util.stream.Collectors.joining;
 
-public record Generator(DocumentManager manager, UnaryOperator<String> mapping, Node template) {
+public record Generator(DocumentManager manager, UnaryOperator<String> mapping, Template template) {
   public Generator {
     Objects.requireNonNull(manager);
     Objects.requireNonNull(mapping);
     Objects.requireNonNull(template);
   }
 
-  private static ComponentStyle answer(boolean activateAnswer) {
-    Component component = activateAnswer
+  public Generator(DocumentManager manager, UnaryOperator<String> mapping, Node template) {
+    this(manager, mapping, compile(template));
+  }
+
+  // the elements rendered differently for each page, see pageComponents()
+  private static final Set<String> PAGE_ELEMENTS = Set.copyOf(pageComponents(null).keySet());
+
+  /// Compiles the template once, only the parts that depend on the page are rendered for each page
+  public static Template compile(Node template) {
+    Objects.requireNonNull(template);
+    return Template.compile(template, XML.OutputKind.HTML, STATIC_STYLE, PAGE_ELEMENTS);
+  }
+
+  private static Component answer(boolean activateAnswer) {
+    return activateAnswer
         ? (_, _, b) ->
           b.node("div", "class", "answer", c ->
             c.around(
@@ -39,9 +60,11 @@ public record Generator(DocumentManager manager, UnaryOperator<String> mapping,
                     "style", "align:center; width:80%")
           ))
         : (_, _, b) -> b.hide();
-    return ComponentStyle.of("answer", component);
   }
 
+  private static final Component PUBLIC_ANSWER = answer(false);
+  private static final Component PRIVATE_ANSWER = answer(true);
+
   //
   // xmlv style is defined in tipi.dtd
   //
@@ -113,16 +136,14 @@ public record Generator(DocumentManager manager, UnaryOperator<String> mapping,
             b.node("table", "style", "font-size:100%", "width", "100%")),
         "team", Component.of((_, _, b) ->
             b.collect((team, b2) -> {
-              var leaders = team.elements().stream().filter(n -> n.name().equals("leader")).toList();
-              var members = team.elements().stream().filter(n -> n.name().equals("member")).toList();
               b2.node("tr", c -> {
                 c.node("td", "align", "left", "valign", "top", c2 -> {
                    c2.node("h3", "style","font-size:90%", c3 -> c3.text("Responsables"));
-                   leaders.forEach(c2::include);
+                   team.forEachElement("leader", c2::include);
                 });
                 c.node("td", "align", "right", "valign", "top", c2 -> {
                    c2.node("h3", "style","font-size:90%", c3 -> c3.text("Chargés de TD"));
-                   members.forEach(c2::include);
+                   team.forEachElement("member", c2::include);
                 });
               });
             })
@@ -159,15 +180,19 @@ public record Generator(DocumentManager manager, UnaryOperator<String> mapping,
           var width = attrs.getOrDefault("width", "");
           var height = attrs.getOrDefault("height", "");
           var align = attrs.getOrDefault("align", "left");
-          b.node("img", Map.of(
-              "src", src,
-              "width", width,
-              "height", height,
-              "style", "height:" + height + ";width:" + width + ";align:" + align + ";"));
+          var imgAttributes = new LinkedHashMap<String, String>();  // keep the output stable
+          imgAttributes.put("src", src);
+          imgAttributes.put("width", width);
+          imgAttributes.put("height", height);
+          imgAttributes.put("style", "height:" + height + ";width:" + width + ";align:" + align + ";");
+          b.node("img", imgAttributes);
         })
     );
   }
 
+  // the styles that do not depend on the page, merged once
+  private static final ComponentStyle STATIC_STYLE = ComponentStyle.anyMatch(DEFAULT_STYLE, TEXT_DECORATION).compile();
+
   private String breadcrumbHref(BreadCrumb breadCrumb, int index) {
     var size = breadCrumb.hrefs().size();
     return "../".repeat(size - 1 - index) + mapping.apply(breadCrumb.hrefs().get(index).getFileName().toString());
@@ -185,101 +210,221 @@ public record Generator(DocumentManager manager, UnaryOperator<String> mapping,
     var filename = metadata.path().getFileName().toString();
     return switch (metadata) {
       case Metadata.Dir _ -> filename;
-      case Metadata.File file -> {
+      case Metadata.File _, Metadata.Indexed _ -> {
         if (filename.equals("index.xumlv")) {
-          yield filePath.getParent().relativize(file.path()).toString();
+          yield filePath.getParent().relativize(metadata.path()).toString();
         }
         yield filename;
       }
     };
   }
 
-  private ComponentStyle file(Path filePath, boolean privateAccess) throws IOException {
-    assert filePath.getFileName().toString().endsWith(".xumlv");
-    var metadata = manager.getFileMetadata(filePath);
-    var document = metadata.document();
-    var summary = metadata.summary();
-    var breadcrumb = manager.getBreadCrumb(filePath);
-    var infosOpt = metadata.infosOpt();
-    return ComponentStyle.of(
-        "insert-content", Component.of((_, _, b) -> {
-          var firstElement = document.getFirstElement().orElseThrow();
-          var draft = Boolean.parseBoolean(firstElement.attributes().getOrDefault("draft", "false"));
-          if (draft & !privateAccess) {
-            b.node("div", "class", "draft", c -> c.text("A venir ... "));
-            return;
-          }
+  // the summary of a directory is defined by its index
+  private static Path summaryFile(Path path) {
+    return Files.isDirectory(path) ? path.resolve("index.xumlv") : path;
+  }
+
+  // the branches of a public and a private page rendered at once
+  private static final Fork.Branch PUBLIC_BRANCH = Fork.Branch.FIRST;
+  private static final Fork.Branch PRIVATE_BRANCH = Fork.Branch.SECOND;
+
+  // the components of the elements rendered differently for each page,
+  // they read the bindings of the context when they are rendered, so the context can be null to get their names
+  private static Map<String, Component> pageComponents(RenderContext context) {
+    var components = new HashMap<String, Component>();
+    components.put("answer", (name, attrs, b) -> {
+      if (context.fork != null) {
+        context.fork.nextElement(PRIVATE_BRANCH);  // the answer is hidden in the public page
+        PRIVATE_ANSWER.render(name, attrs, b);
+        return;
+      }
+      (context.privateAccess ? PRIVATE_ANSWER : PUBLIC_ANSWER).render(name, attrs, b);
+    });
+    components.put("insert-content", (_, _, b) -> {
+      var firstElement = context.metadata.document().getFirstElement().orElseThrow();
+      var draft = Boolean.parseBoolean(firstElement.attributes().getOrDefault("draft", "false"));
+      if (draft && context.fork != null) {
+        context.fork.run(PUBLIC_BRANCH, () ->
+            b.fragment(c -> c.node("div", "class", "draft", c2 -> c2.text("A venir ... "))));
+        context.fork.run(PRIVATE_BRANCH, () -> {
           for (var node : firstElement.childNodes()) {
             b.include(node);
           }
-        }),
-        "insert-title-text", Component.of((_, _, b) -> b.text(summary.title())),
-        "insert-infos", Component.of((_, _, b) ->
-          infosOpt.ifPresent(node ->
-            b.node("div", "class", "infos", c ->
-              c.include(node)
-               .node("hr")
-            )
-          )
-        ),
-        "insert-breadcrumb", Component.of((_, _, b) ->
-          b.node("span", "class", "bread-crumb", c -> {
-            var names = breadcrumb.names();
-            for(var i = 0; i < names.size(); i++) {
-              c.text(" :: ");
-              var title = names.get(i);
-              var href = breadcrumbHref(breadcrumb, i);
-              c.node("a", "href", href, c2 -> c2.text(title));
-            }
-            c.text(" :: ");
-          })
-        ),
-        "tdref", "dir", Component.of((_, attrs, b) -> {
-          var name = attrs.getOrDefault("name", "");
-          var refPath = filePath.resolveSibling(name);
-          var refMetadata = manager.getMetadata(refPath);
-          var refName = localRefName(filePath, refMetadata);
-          var refSummary = refMetadata.summary();
-          b.node("li", c -> {
-            c.node("a", "href", mapping.apply(refName), c2 ->
-                c2.text(refSummary.title()));
-            c.node("br");
-            c.text(refSummary.subsections().stream().map(s -> "[" + s + "]").collect(joining(" ")));
-          });
-        }),
-        "srcref", Component.of((_, attrs, b) -> {
-          var link = attrs.get("link");
-          var name = attrs.getOrDefault("name", "");
-          var href = (link == null) ? name : link;
-          if (link == null) {
-            var content = readContent(filePath.resolveSibling(name));
-            if (content != null) {
-              b.node("pre", c -> c.text(content));
-              return;
-            }
-          }
-          b.node("div", "class", "noprint", c ->
-            c.node("a", "href", mapping.apply(href), c2 ->
-              c2.node("img", "class", "noprint", "src", "http://igm.univ-mlv.fr/ens/resources/file.png")
-            )
-          );
-        })
+        });
+        return;
+      }
+      if (draft & !context.privateAccess) {
+        b.node("div", "class", "draft", c -> c.text("A venir ... "));
+        return;
+      }
+      for (var node : firstElement.childNodes()) {
+        b.include(node);
+      }
+    });
+    components.put("insert-title-text", (_, _, b) -> b.text(context.metadata.summary().title()));
+    components.put("insert-infos", (_, _, b) ->
+      context.metadata.infosOpt().ifPresent(node ->
+        b.node("div", "class", "infos", c ->
+          c.include(node)
+           .node("hr")
+        )
+      )
     );
+    components.put("insert-breadcrumb", (_, _, b) -> {
+      var breadcrumb = context.generator().manager.getBreadCrumb(context.filePath);
+      for (var href : breadcrumb.hrefs()) {
+        context.addDependency(new Dependency(Dependency.Kind.TITLE, summaryFile(href)));
+      }
+      b.node("span", "class", "bread-crumb", c -> {
+        var names = breadcrumb.names();
+        for(var i = 0; i < names.size(); i++) {
+          c.text(" :: ");
+          var title = names.get(i);
+          var href = context.generator().breadcrumbHref(breadcrumb, i);
+          c.node("a", "href", href, c2 -> c2.text(title));
+        }
+        c.text(" :: ");
+      });
+    });
+    components.put("tdref", (_, attrs, b) -> {
+      var name = attrs.getOrDefault("name", "");
+      var refPath = context.filePath.resolveSibling(name);
+      var refMetadata = context.generator().manager.getMetadata(refPath);
+      context.addDependency(new Dependency(Dependency.Kind.SUMMARY, summaryFile(refMetadata.path())));
+      var refName = localRefName(context.filePath, refMetadata);
+      var refSummary = refMetadata.summary();
+      b.node("li", c -> {
+        c.node("a", "href", context.generator().mapping.apply(refName), c2 ->
+            c2.text(refSummary.title()));
+        c.node("br");
+        c.text(refSummary.subsections().stream().map(s -> "[" + s + "]").collect(joining(" ")));
+      });
+    });
+    components.put("dir", components.get("tdref"));
+    components.put("srcref", (_, attrs, b) -> {
+      var link = attrs.get("link");
+      var name = attrs.getOrDefault("name", "");
+      var href = (link == null) ? name : link;
+      if (link == null) {
+        var srcPath = context.filePath.resolveSibling(name);
+        context.addDependency(new Dependency(Dependency.Kind.CONTENT, srcPath));
+        var content = context.generator().readContent(srcPath);
+        if (content != null) {
+          b.node("pre", c -> c.text(content));
+          return;
+        }
+      }
+      b.node("div", "class", "noprint", c ->
+        c.node("a", "href", context.generator().mapping.apply(href), c2 ->
+          c2.node("img", "class", "noprint", "src", "http://igm.univ-mlv.fr/ens/resources/file.png")
+        )
+      );
+    });
+
+    return components;
   }
 
-  public void generate(Path dirPath, Path destPath, boolean privateAccess) throws IOException {
+  // the style of the pages, created once per thread,
+  // only the bindings (the file, its metadata, the access and the dependencies) change from one page to another,
+  // if the public and the private pages are rendered at once, the fork is not null
+  // and the dependencies are the ones of the public page
+  private final class RenderContext {
+    private final ComponentStyle style;
+    private Path filePath;
+    private Metadata.File metadata;
+    private boolean privateAccess;
+    private Set<Dependency> dependencies;
+    private Fork fork;
+    private Set<Dependency> privateDependencies;
+
+    private RenderContext() {
+      style = ComponentStyle.anyMatch(ComponentStyle.of(pageComponents(this)), STATIC_STYLE).compile();
+    }
+
+    private Generator generator() {
+      return Generator.this;
+    }
+
+    private void bind(Path filePath, Metadata.File metadata, boolean privateAccess, Set<Dependency> dependencies,
+                      Fork fork, Set<Dependency> privateDependencies) {
+      this.filePath = filePath;
+      this.metadata = metadata;
+      this.privateAccess = privateAccess;
+      this.dependencies = dependencies;
+      this.fork = fork;
+      this.privateDependencies = privateDependencies;
+    }
+
+    // a dependency is only recorded for the pages that contain the rendered element
+    private void addDependency(Dependency dependency) {
+      if (fork == null) {
+        dependencies.add(dependency);
+        return;
+      }
+      if (fork.isWritten(PUBLIC_BRANCH)) {
+        dependencies.add(dependency);
+      }
+      if (fork.isWritten(PRIVATE_BRANCH)) {
+        privateDependencies.add(dependency);
+      }
+    }
+  }
+
+  private static final ThreadLocal<RenderContext> RENDER_CONTEXT = new ThreadLocal<>();
+
+  private RenderContext renderContext() {
+    var context = RENDER_CONTEXT.get();
+    if (context == null || context.generator() != this) {
+      context = new RenderContext();
+      RENDER_CONTEXT.set(context);
+    }
+    return context;
+  }
+
+  /// Generates the page and returns the files (other than the page itself and the template) it depends on
+  public Set<Dependency> generate(Path dirPath, Path destPath, boolean privateAccess) throws IOException {
     Objects.requireNonNull(dirPath);
     Objects.requireNonNull(destPath);
-    var style = ComponentStyle.anyMatch(
-        answer(privateAccess),
-        file(dirPath, privateAccess),
-        DEFAULT_STYLE,
-        TEXT_DECORATION
-    );
+    assert dirPath.getFileName().toString().endsWith(".xumlv");
+    var metadata = manager.getFileMetadata(dirPath);
+    var dependencies = new LinkedHashSet<Dependency>();
+    var context = renderContext();
+    context.bind(dirPath, metadata, privateAccess, dependencies, null, null);
     try(var writer = Files.newBufferedWriter(destPath)) {
-      XML.transform(template, writer, XML.OutputKind.HTML, style);
+      template.render(writer, context.style);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      context.bind(null, null, false, null, null, null);  // do not retain the page
+    }
+    return Collections.unmodifiableSet(dependencies);
+  }
+
+  /// Generates the public and the private page at once, the page is rewritten once,
+  /// only the answers and the content of a draft are rendered for one of the two pages.
+  /// Returns the files each page depends on, like [#generate(Path, Path, boolean)]
+  public Map<Status.Kind, Set<Dependency>> generate(Path dirPath, Path publicDestPath, Path privateDestPath) throws IOException {
+    Objects.requireNonNull(dirPath);
+    Objects.requireNonNull(publicDestPath);
+    Objects.requireNonNull(privateDestPath);
+    assert dirPath.getFileName().toString().endsWith(".xumlv");
+    var metadata = manager.getFileMetadata(dirPath);
+    var publicDependencies = new LinkedHashSet<Dependency>();
+    var privateDependencies = new LinkedHashSet<Dependency>();
+    var fork = new Fork();
+    var context = renderContext();
+    context.bind(dirPath, metadata, false, publicDependencies, fork, privateDependencies);
+    try(var publicWriter = Files.newBufferedWriter(publicDestPath);
+        var privateWriter = Files.newBufferedWriter(privateDestPath)) {
+      template.render(publicWriter, privateWriter, context.style, fork);
     } catch (UncheckedIOException e) {
       throw e.getCause();
+    } finally {
+      context.bind(null, null, false, null, null, null);  // do not retain the page
     }
+    var dependencyMap = new EnumMap<Status.Kind, Set<Dependency>>(Status.Kind.class);
+    dependencyMap.put(Status.Kind.PUBLIC, Collections.unmodifiableSet(publicDependencies));
+    dependencyMap.put(Status.Kind.PRIVATE, Collections.unmodifiableSet(privateDependencies));
+    return Collections.unmodifiableMap(dependencyMap);
   }
 }
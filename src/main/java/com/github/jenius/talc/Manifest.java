@@ -0,0 +1,270 @@
+package com.github.jenius.talc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.SequencedMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/// A build manifest stored in a destination directory.
+/// For each generated file, it records the size and the hash of the source file, the hash of the output file,
+/// and the fingerprints of the files the output depends on,
+/// so a file is only generated again if its content or one of its dependencies has really changed.
+/// The source files are recorded too, to find the pages that depend on a changed file,
+/// a manifest kept in memory indexes the pages by dependency, so finding them does not scan all the entries.
+/// The source files are stored relative to the source root and the other files (the template) as absolute paths,
+/// so a manifest does not depend on the working directory or on how the paths are spelled.
+public final class Manifest {
+  static final String FILENAME = ".jenius-manifest";
+  private static final String HEADER = "# jenius manifest 3";
+
+  /// hash of a file that does not exist (a CRC32C is never negative)
+  static final long NO_HASH = -1;
+
+  record DependencyEntry(Dependency dependency, long contentHash, long fingerprint) {}
+
+  record Entry(Path file, long size, long hash, long outputHash, List<DependencyEntry> dependencies) {
+    Entry {
+      Objects.requireNonNull(file);
+      dependencies = List.copyOf(dependencies);
+    }
+  }
+
+  private final Path dest;
+  private final Path absoluteRoot;  // the source root
+  private final ConcurrentHashMap<Path, Entry> entryMap;
+  private final HashMap<Path, HashSet<Path>> dependentMap = new HashMap<>();  // normalized dependency path -> keys, guarded by this
+
+  private Manifest(Path dest, Path root, ConcurrentHashMap<Path, Entry> entryMap) {
+    this.dest = dest;
+    this.absoluteRoot = normalize(root);
+    this.entryMap = entryMap;
+    entryMap.forEach((key, entry) -> reindex(key, null, entry));
+  }
+
+  static Path normalize(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+
+  // the entries are updated by several generations in parallel, but never the same entry
+  private synchronized void reindex(Path key, Entry oldEntry, Entry newEntry) {
+    if (oldEntry != null) {
+      for(var dependencyEntry : oldEntry.dependencies) {
+        var path = normalize(dependencyEntry.dependency.path());
+        var keys = dependentMap.get(path);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+          dependentMap.remove(path);
+        }
+      }
+    }
+    if (newEntry != null) {
+      for(var dependencyEntry : newEntry.dependencies) {
+        dependentMap.computeIfAbsent(normalize(dependencyEntry.dependency.path()), _ -> new HashSet<>()).add(key);
+      }
+    }
+  }
+
+  /// Returns the destination directory of the manifest
+  public Path dest() {
+    return dest;
+  }
+
+  static long hash(Path file) throws IOException {
+    var crc = new CRC32C();
+    crc.update(Files.readAllBytes(file));
+    return crc.getValue();
+  }
+
+  private static String hex(long hash) {
+    return hash == NO_HASH ? "-" : Long.toHexString(hash);
+  }
+
+  private static long parseHex(String text) {
+    return text.equals("-") ? NO_HASH : Long.parseUnsignedLong(text, 16);
+  }
+
+  // a path inside the root is stored relative to the root, another path as an absolute path
+  static String format(Path path, Path absoluteRoot) {
+    var normalized = normalize(path);
+    return normalized.startsWith(absoluteRoot) ? absoluteRoot.relativize(normalized).toString() : normalized.toString();
+  }
+
+  static Path parsePath(String text, Path root) {
+    var path = Path.of(text);
+    return path.isAbsolute() ? path : root.resolve(path);
+  }
+
+  private static Entry parseEntry(String[] tokens, Path root) {
+    return new Entry(parsePath(tokens[4], root), Long.parseLong(tokens[0]), parseHex(tokens[1]), parseHex(tokens[2]), List.of());
+  }
+
+  private static DependencyEntry parseDependencyEntry(String[] tokens, Path root) {
+    var dependency = new Dependency(Dependency.Kind.valueOf(tokens[1]), parsePath(tokens[4], root));
+    return new DependencyEntry(dependency, parseHex(tokens[2]), parseHex(tokens[3]));
+  }
+
+  /// Loads the manifest of a destination directory, root is the directory of the source files
+  public static Manifest load(Path dest, Path root) throws IOException {
+    Objects.requireNonNull(dest);
+    Objects.requireNonNull(root);
+    var entryMap = new ConcurrentHashMap<Path, Entry>();
+    var manifestFile = dest.resolve(FILENAME);
+    try(var reader = Files.newBufferedReader(manifestFile)) {
+      if (!HEADER.equals(reader.readLine())) {
+        return new Manifest(dest, root, entryMap);  // unknown format, start from scratch
+      }
+      Path key = null;
+      Entry entry = null;
+      var dependencies = new ArrayList<DependencyEntry>();
+      String line;
+      while((line = reader.readLine()) != null) {
+        // the fields are separated by tabs,
+        // a dependency line starts with a '+' and follows the line of its entry
+        var tokens = line.split("\t", 5);
+        var isDependency = tokens[0].equals("+");
+        if (tokens.length != 5 || (isDependency && entry == null)) {
+          throw new IOException("invalid manifest line " + line + " in " + manifestFile);
+        }
+        try {
+          if (isDependency) {
+            dependencies.add(parseDependencyEntry(tokens, root));
+            continue;
+          }
+          if (entry != null) {
+            entryMap.put(key, new Entry(entry.file, entry.size, entry.hash, entry.outputHash, dependencies));
+            dependencies.clear();
+          }
+          key = Path.of(tokens[3]);
+          entry = parseEntry(tokens, root);
+        } catch (IllegalArgumentException e) {
+          throw new IOException("invalid manifest line " + line + " in " + manifestFile, e);
+        }
+      }
+      if (entry != null) {
+        entryMap.put(key, new Entry(entry.file, entry.size, entry.hash, entry.outputHash, dependencies));
+      }
+    } catch (NoSuchFileException _) {
+      // no manifest yet
+    }
+    return new Manifest(dest, root, entryMap);
+  }
+
+  public void save() throws IOException {
+    var manifestFile = dest.resolve(FILENAME);
+    var tmpFile = dest.resolve(FILENAME + ".tmp");
+    try(var writer = Files.newBufferedWriter(tmpFile)) {
+      writer.write(HEADER);
+      writer.newLine();
+      for(var mapEntry : new TreeMap<>(entryMap).entrySet()) {
+        var entry = mapEntry.getValue();
+        writer.write(entry.size + "\t" + hex(entry.hash) + "\t" + hex(entry.outputHash) + "\t" + mapEntry.getKey() + "\t" + format(entry.file, absoluteRoot));
+        writer.newLine();
+        for(var dependencyEntry : entry.dependencies) {
+          var dependency = dependencyEntry.dependency;
+          writer.write("+\t" + dependency.kind() + "\t" + hex(dependencyEntry.contentHash) + "\t" + hex(dependencyEntry.fingerprint) + "\t" + format(dependency.path(), absoluteRoot));
+          writer.newLine();
+        }
+      }
+    }
+    Files.move(tmpFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private Path key(Path destFile) {
+    return dest.relativize(destFile);
+  }
+
+  public boolean contains(Path destFile) {
+    Objects.requireNonNull(destFile);
+    return entryMap.containsKey(key(destFile));
+  }
+
+  private static boolean isUpToDate(DependencyEntry dependencyEntry, DocumentManager manager) {
+    var dependency = dependencyEntry.dependency;
+    if (manager.getContentHash(dependency.path()) == dependencyEntry.contentHash) {
+      return true;
+    }
+    // the file has changed, but perhaps not the part used by the page
+    return dependency.fingerprint(manager) == dependencyEntry.fingerprint;
+  }
+
+  public boolean isUpToDate(Path file, Path destFile, DocumentManager manager) throws IOException {
+    Objects.requireNonNull(file);
+    Objects.requireNonNull(destFile);
+    Objects.requireNonNull(manager);
+    var entry = entryMap.get(key(destFile));
+    if (entry == null) {
+      return false;
+    }
+    if (entry.size != Files.size(file)   // cheap check first
+        || entry.hash != hash(file)
+        || entry.outputHash != hash(destFile)) {
+      return false;
+    }
+    for(var dependencyEntry : entry.dependencies) {
+      if (!isUpToDate(dependencyEntry, manager)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void put(Path file, Path destFile, List<DependencyEntry> dependencyEntries) throws IOException {
+    var key = key(destFile);
+    var entry = new Entry(file, Files.size(file), hash(file), hash(destFile), dependencyEntries);
+    reindex(key, entryMap.put(key, entry), entry);
+  }
+
+  public void update(Path file, Path destFile) throws IOException {
+    Objects.requireNonNull(file);
+    Objects.requireNonNull(destFile);
+    put(file, destFile, List.of());
+  }
+
+  public void update(Path file, Path destFile, Set<Dependency> dependencies, DocumentManager manager) throws IOException {
+    Objects.requireNonNull(file);
+    Objects.requireNonNull(destFile);
+    Objects.requireNonNull(dependencies);
+    Objects.requireNonNull(manager);
+    var dependencyEntries = dependencies.stream()
+        .map(dependency -> new DependencyEntry(dependency,
+            manager.getContentHash(dependency.path()),
+            dependency.fingerprint(manager)))
+        .toList();
+    put(file, destFile, dependencyEntries);
+  }
+
+  public void remove(Path destFile) {
+    Objects.requireNonNull(destFile);
+    var key = key(destFile);
+    reindex(key, entryMap.remove(key), null);
+  }
+
+  /// Returns the source files and the destination files of the pages that depend on one of the paths
+  public synchronized SequencedMap<Path, Path> dependents(Set<Path> paths) {
+    Objects.requireNonNull(paths);
+    var dependents = new TreeMap<Path, Path>();
+    for(var path : paths) {
+      var keys = dependentMap.get(normalize(path));
+      if (keys == null) {
+        continue;
+      }
+      for(var key : keys) {
+        var entry = entryMap.get(key);
+        if (entry != null) {
+          dependents.put(entry.file, dest.resolve(key));
+        }
+      }
+    }
+    return dependents;
+  }
+}
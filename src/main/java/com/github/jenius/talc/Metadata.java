@@ -15,6 +15,13 @@ public sealed interface Metadata {
       Objects.requireNonNull(infosOpt);
     }
   }
+  /// metadata of a file that has not changed, known only by its summary
+  record Indexed(Path path, Summary summary) implements Metadata {
+    public Indexed {
+      Objects.requireNonNull(path);
+      Objects.requireNonNull(summary);
+    }
+  }
   record Dir(Path path, Summary summary) implements Metadata {
     public Dir {
       Objects.requireNonNull(path);
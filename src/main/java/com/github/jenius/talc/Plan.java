@@ -2,14 +2,17 @@ package com.github.jenius.talc;
 
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.SequencedMap;
 import java.util.stream.Collectors;
 
 public final class Plan {
   private final LinkedHashMap<Path, List<Status>> planMap = new LinkedHashMap<>();
+  private final EnumMap<Status.Kind, Manifest> manifestMap = new EnumMap<>(Status.Kind.class);
 
   @Override
   public boolean equals(Object obj) {
@@ -37,6 +40,17 @@ public final class Plan {
     planMap.remove(path);
   }
 
+  void setManifest(Status.Kind kind, Manifest manifest) {
+    Objects.requireNonNull(kind);
+    Objects.requireNonNull(manifest);
+    manifestMap.put(kind, manifest);
+  }
+
+  public Optional<Manifest> manifest(Status.Kind kind) {
+    Objects.requireNonNull(kind);
+    return Optional.ofNullable(manifestMap.get(kind));
+  }
+
   public SequencedMap<Path, List<Status>> statusMap() {
     return Collections.unmodifiableSequencedMap(planMap);
   }
@@ -7,8 +7,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.github.jenius.talc.Status.Kind.PRIVATE;
 import static com.github.jenius.talc.Status.Kind.PUBLIC;
@@ -27,13 +30,15 @@ public final class PlanFactory {
 
   private record Scan(Set<String> names, List<String> directories) { }
 
+  // ignore hidden files and private directory
+  private static boolean isIgnored(String filename) {
+    return filename.startsWith(".") || filename.equals("private");
+  }
+
   private static Scan scan(Path directory) throws IOException {
     try(var files = Files.list(directory)) {
       return files
-          .filter(p -> {
-            var filename = p.getFileName().toString();
-            return !filename.startsWith(".") && !filename.equals("private"); // ignore hidden files and private directory
-          })
+          .filter(p -> !isIgnored(p.getFileName().toString()))
           .collect(Collectors.teeing(
           Collectors.mapping(p -> p.getFileName().toString(), Collectors.toSet()),
           Collectors.filtering(Files::isDirectory, Collectors.mapping(p -> p.getFileName().toString(),Collectors.toList())),
@@ -47,7 +52,18 @@ public final class PlanFactory {
     return destFileTime.compareTo(dirFileTime) < 0;
   }
 
-  private void diff(Path dir, Set<String> dirSet, Path dest, Set<String> destSet, Status.Kind kind, Plan plan) throws IOException {
+  private static boolean isOutdated(Path dirFile, Path destFile, Manifest manifest, DocumentManager manager) throws IOException {
+    if (Files.isDirectory(dirFile)) {
+      return false;  // the content of a directory is checked separately
+    }
+    if (!manifest.contains(destFile)) {
+      return isMoreRecent(dirFile, destFile);  // generated before the manifest existed
+    }
+    return !manifest.isUpToDate(dirFile, destFile, manager);
+  }
+
+  private void diff(Path dir, Set<String> dirSet, Path dest, Set<String> destSet, Status.Kind kind, Plan plan, DocumentManager manager) throws IOException {
+    var manifest = plan.manifest(kind).orElseThrow();
     var dirSetMapped = new HashSet<>();
     for(var name : dirSet) {
       var dirFile = dir.resolve(name);
@@ -55,7 +71,7 @@ public final class PlanFactory {
       var destFile = dest.resolve(destName);
       dirSetMapped.add(destName);
       if (destSet.contains(destName)) {
-        if (alwaysUpdate || isMoreRecent(dirFile, destFile)) {  // use computeSHA1 depending on the kind of file ??
+        if (alwaysUpdate || isOutdated(dirFile, destFile, manifest, manager)) {
           plan.add(dirFile, new Status(UPDATED, kind, destFile));
         }
       } else {
@@ -70,45 +86,179 @@ public final class PlanFactory {
     }
   }
 
-  private void diffNames(Path dir, Scan dirScan, Path dest, Status.Kind kind, Plan plan) throws IOException {
+  private void diffNames(Path dir, Scan dirScan, Path dest, Status.Kind kind, Plan plan, DocumentManager manager) throws IOException {
     if (Files.isDirectory(dest)) {
       var destScan = scan(dest);
-      diff(dir, dirScan.names, dest, destScan.names, kind, plan);
+      diff(dir, dirScan.names, dest, destScan.names, kind, plan, manager);
     } else {
-      diff(dir, dirScan.names, dest, Set.of(), kind, plan);
+      diff(dir, dirScan.names, dest, Set.of(), kind, plan, manager);
     }
   }
 
-  private void scanDirectory(Path dir, Path dest, Path privateDest, Plan plan) throws IOException {
+  private void scanDirectory(Path dir, Path dest, Path privateDest, Plan plan, DocumentManager manager) throws IOException {
     var dirScan = scan(dir);
     if (dest != null) {
-      diffNames(dir, dirScan, dest, PUBLIC, plan);
+      diffNames(dir, dirScan, dest, PUBLIC, plan, manager);
     }
     if (privateDest != null) {
-      diffNames(dir, dirScan, privateDest, PRIVATE, plan);
+      diffNames(dir, dirScan, privateDest, PRIVATE, plan, manager);
     }
     for(var directory : dirScan.directories) {
       var newDir = dir.resolve(directory);
       var newDest = dest == null || directory.equals("PRIVATE") ? null : dest.resolve(directory);
       var newPrivateDest = privateDest == null ? null : privateDest.resolve(directory);
-      scanDirectory(newDir, newDest, newPrivateDest, plan);
+      scanDirectory(newDir, newDest, newPrivateDest, plan, manager);
+    }
+  }
+
+  private void diffPath(Path dir, String name, Path dest, Status.Kind kind, Plan plan, DocumentManager manager) throws IOException {
+    var dirSet = Files.exists(dir.resolve(name)) ? Set.of(name) : Set.<String>of();
+    var destName = mapping.apply(name);
+    var destFile = dest.resolve(destName);
+    var destSet = Files.exists(destFile) ? Set.of(destName) : Set.<String>of();
+    diff(dir, dirSet, dest, destSet, kind, plan, manager);
+    if (dirSet.isEmpty() && Files.isDirectory(destFile)) {
+      // a removed directory, its content is removed first
+      try(var files = Files.walk(destFile)) {
+        for(var destPath : (Iterable<Path>) files.skip(1)::iterator) {
+          plan.add(destPath, new Status(REMOVED, kind, destPath));
+        }
+      }
+    }
+  }
+
+  private void diffPath(Path dir, Path path, Path dest, Path privateDest, Plan plan, DocumentManager manager) throws IOException {
+    var relativePath = dir.relativize(path);
+    for(var name : relativePath) {
+      if (isIgnored(name.toString())) {
+        return;
+      }
+    }
+    // same rules as scanDirectory
+    var parentDir = path.getParent();
+    var parentPath = relativePath.getParent();
+    var parentDest = parentPath == null ? dest : dest.resolve(parentPath);
+    var parentPrivateDest = privateDest == null ? null : parentPath == null ? privateDest : privateDest.resolve(parentPath);
+    var isPublic = parentPath == null || stream(parentPath).noneMatch(name -> name.toString().equals("PRIVATE"));
+    var name = path.getFileName().toString();
+    if (isPublic) {
+      diffPath(parentDir, name, parentDest, PUBLIC, plan, manager);
+    }
+    if (parentPrivateDest != null) {
+      diffPath(parentDir, name, parentPrivateDest, PRIVATE, plan, manager);
+    }
+    if (Files.isDirectory(path)) {
+      // a created directory, its content is not reported by the file system events
+      var newDest = isPublic && !name.equals("PRIVATE") ? parentDest.resolve(name) : null;
+      var newPrivateDest = parentPrivateDest == null ? null : parentPrivateDest.resolve(name);
+      scanDirectory(path, newDest, newPrivateDest, plan, manager);
+    }
+  }
+
+  // the content of a removed directory is removed with the directory
+  private static Path removedAncestor(Path dir, Path path) {
+    while(!path.getParent().equals(dir) && !Files.exists(path.getParent())) {
+      path = path.getParent();
+    }
+    return path;
+  }
+
+  private static Stream<Path> stream(Path path) {
+    return StreamSupport.stream(path.spliterator(), false);
+  }
+
+  private void diffDependents(Set<Path> changedPaths, Status.Kind kind, Plan plan, DocumentManager manager) throws IOException {
+    var manifest = plan.manifest(kind).orElseThrow();
+    for(var entry : manifest.dependents(changedPaths).entrySet()) {
+      var dirFile = entry.getKey();
+      var destFile = entry.getValue();
+      var alreadyPlanned = plan.statusMap().getOrDefault(dirFile, List.of()).stream()
+          .anyMatch(status -> status.kind() == kind);
+      if (alreadyPlanned || !Files.exists(dirFile) || !Files.exists(destFile)) {
+        continue;
+      }
+      if (alwaysUpdate || isOutdated(dirFile, destFile, manifest, manager)) {
+        plan.add(dirFile, new Status(UPDATED, kind, destFile));
+      }
     }
   }
 
   public Plan diff(Path dir, Path dest, Path privateDest) throws IOException {
-    Objects.requireNonNull(dir);
-    Objects.requireNonNull(dest);
+    return diff(dir, dest, privateDest, new DocumentManager(dir));
+  }
+
+  private static Plan newPlan(Path dir, Manifest manifest, Manifest privateManifest) throws IOException {
     if (!Files.isDirectory(dir)) {
       throw new IOException(dir + " is not a directory");
     }
-    if (!Files.isDirectory(dest)) {
-      throw new IOException(dest + " is not a directory");
+    if (!Files.isDirectory(manifest.dest())) {
+      throw new IOException(manifest.dest() + " is not a directory");
     }
-    if (privateDest != null && !Files.isDirectory(privateDest)) {
-      throw new IOException(privateDest + " is not a directory");
+    if (privateManifest != null && !Files.isDirectory(privateManifest.dest())) {
+      throw new IOException(privateManifest.dest() + " is not a directory");
     }
     var plan = new Plan();
-    scanDirectory(dir, dest, privateDest, plan);
+    plan.setManifest(PUBLIC, manifest);
+    if (privateManifest != null) {
+      plan.setManifest(PRIVATE, privateManifest);
+    }
+    return plan;
+  }
+
+  private static Manifest loadManifest(Path dest, Path dir) throws IOException {
+    return dest == null ? null : Manifest.load(dest, dir);
+  }
+
+  /// Computes the plan, the manager is used to check the dependencies of the pages
+  public Plan diff(Path dir, Path dest, Path privateDest, DocumentManager manager) throws IOException {
+    Objects.requireNonNull(dest);
+    return diff(dir, Manifest.load(dest, dir), loadManifest(privateDest, dir), manager);
+  }
+
+  /// Computes the plan using manifests already loaded, the destination directories are the ones of the manifests,
+  /// the private manifest can be null
+  public Plan diff(Path dir, Manifest manifest, Manifest privateManifest, DocumentManager manager) throws IOException {
+    Objects.requireNonNull(dir);
+    Objects.requireNonNull(manifest);
+    Objects.requireNonNull(manager);
+    var plan = newPlan(dir, manifest, privateManifest);
+    scanDirectory(dir, manifest.dest(), privateManifest == null ? null : privateManifest.dest(), plan, manager);
+    return plan;
+  }
+
+  /// Computes the plan of the changed paths and of the pages that depend on them,
+  /// without scanning the whole directory
+  public Plan diff(Path dir, Path dest, Path privateDest, Set<Path> changedPaths, DocumentManager manager) throws IOException {
+    Objects.requireNonNull(dest);
+    return diff(dir, Manifest.load(dest, dir), loadManifest(privateDest, dir), changedPaths, manager);
+  }
+
+  /// Computes the plan of the changed paths using manifests already loaded,
+  /// the pages that depend on the changed paths are found in the index of the manifests
+  public Plan diff(Path dir, Manifest manifest, Manifest privateManifest, Set<Path> changedPaths, DocumentManager manager) throws IOException {
+    Objects.requireNonNull(dir);
+    Objects.requireNonNull(manifest);
+    Objects.requireNonNull(changedPaths);
+    Objects.requireNonNull(manager);
+    var plan = newPlan(dir, manifest, privateManifest);
+    var dest = manifest.dest();
+    var privateDest = privateManifest == null ? null : privateManifest.dest();
+    var visited = new HashSet<Path>();
+    for(var changedPath : new TreeSet<>(changedPaths)) {  // parent directories first
+      if (!changedPath.startsWith(dir) || changedPath.equals(dir)) {
+        continue;
+      }
+      var path = removedAncestor(dir, changedPath);
+      if (!visited.add(path) || plan.statusMap().containsKey(path)) {
+        continue;  // already planned with its parent directory
+      }
+      diffPath(dir, path, dest, privateDest, plan, manager);
+    }
+    for(var kind : Status.Kind.values()) {
+      if (plan.manifest(kind).isPresent()) {
+        diffDependents(changedPaths, kind, plan, manager);
+      }
+    }
     return plan;
   }
 }
@@ -0,0 +1,138 @@
+package com.github.jenius.talc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// A persistent index of the summaries of the documents, stored in the destination directory.
+/// A summary is only valid if the content hash of the document has not changed,
+/// so a document that has not changed is not parsed again to get its title and its exercises.
+/// The documents are stored relative to the source root, like in a [Manifest].
+/// The index is only a cache, an index that can not be read is ignored.
+public final class SummaryIndex {
+  static final String FILENAME = ".jenius-summaries";
+  private static final int MAGIC = 0x4a534958;  // JSIX
+  private static final int VERSION = 2;
+
+  private record Entry(long hash, Summary summary) {}
+
+  private final Path indexFile;     // null if not persistent
+  private final Path absoluteRoot;  // null if not persistent
+  private final ConcurrentHashMap<Path, Entry> entryMap;
+  private volatile boolean modified;
+
+  private SummaryIndex(Path indexFile, Path absoluteRoot, ConcurrentHashMap<Path, Entry> entryMap) {
+    this.indexFile = indexFile;
+    this.absoluteRoot = absoluteRoot;
+    this.entryMap = entryMap;
+  }
+
+  public static SummaryIndex empty() {
+    return new SummaryIndex(null, null, new ConcurrentHashMap<>());
+  }
+
+  // a count read from the file can not be greater than the number of bytes of the file
+  private static int readCount(DataInputStream input, long fileSize) throws IOException {
+    var count = input.readInt();
+    if (count < 0 || count > fileSize) {
+      throw new IOException("invalid count " + count);
+    }
+    return count;
+  }
+
+  /// Loads the index of a destination directory, root is the directory of the source files
+  public static SummaryIndex load(Path dest, Path root) {
+    Objects.requireNonNull(dest);
+    Objects.requireNonNull(root);
+    var indexFile = dest.resolve(FILENAME);
+    var absoluteRoot = Manifest.normalize(root);
+    var entryMap = new ConcurrentHashMap<Path, Entry>();
+    try(var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        return new SummaryIndex(indexFile, absoluteRoot, entryMap);  // unknown format, start from scratch
+      }
+      var fileSize = Files.size(indexFile);
+      var size = readCount(input, fileSize);
+      for(var i = 0; i < size; i++) {
+        var path = Manifest.parsePath(input.readUTF(), root);
+        var hash = input.readLong();
+        var title = input.readUTF();
+        var subsectionCount = readCount(input, fileSize);
+        var subsections = new ArrayList<String>(subsectionCount);
+        for(var j = 0; j < subsectionCount; j++) {
+          subsections.add(input.readUTF());
+        }
+        entryMap.put(path, new Entry(hash, new Summary(title, subsections)));
+      }
+    } catch (NoSuchFileException _) {
+      // no index yet
+    } catch (IOException | IllegalArgumentException _) {
+      // truncated or corrupted, start from scratch
+      entryMap.clear();
+    }
+    return new SummaryIndex(indexFile, absoluteRoot, entryMap);
+  }
+
+  public void save() throws IOException {
+    if (indexFile == null) {
+      throw new IllegalStateException("this index is not persistent");
+    }
+    if (!modified) {
+      return;
+    }
+    // forget the deleted documents
+    entryMap.keySet().removeIf(path -> !Files.exists(path));
+    var tmpFile = indexFile.resolveSibling(FILENAME + ".tmp");
+    try(var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+      var entries = new TreeMap<>(entryMap);
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(entries.size());
+      for(var mapEntry : entries.entrySet()) {
+        var entry = mapEntry.getValue();
+        output.writeUTF(Manifest.format(mapEntry.getKey(), absoluteRoot));
+        output.writeLong(entry.hash);
+        output.writeUTF(entry.summary.title());
+        output.writeInt(entry.summary.subsections().size());
+        for(var subsection : entry.summary.subsections()) {
+          output.writeUTF(subsection);
+        }
+      }
+    }
+    Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    modified = false;
+  }
+
+  /// Returns the summary of the document if the document has not changed
+  public Optional<Summary> get(Path path, long hash) {
+    Objects.requireNonNull(path);
+    var entry = entryMap.get(path);
+    if (entry == null || entry.hash != hash || hash == Manifest.NO_HASH) {
+      return Optional.empty();
+    }
+    return Optional.of(entry.summary);
+  }
+
+  public void put(Path path, long hash, Summary summary) {
+    Objects.requireNonNull(path);
+    Objects.requireNonNull(summary);
+    if (hash == Manifest.NO_HASH) {
+      return;
+    }
+    var entry = new Entry(hash, summary);
+    if (!entry.equals(entryMap.put(path, entry))) {
+      modified = true;
+    }
+  }
+}
@@ -150,4 +150,26 @@ public class ConfigTest {
         () -> assertEquals(Path.of("template.html"), config.template())
     );
   }
-}
\ No newline at end of file
+
+  @Test
+  public void parseConfigWithJobs() {
+    var args = new String[]{"--jobs", "4", "source", "dest", "template.html"};
+    var config = Config.parseConfig(args);
+
+    assertAll(
+        () -> assertEquals(4, config.jobs()),
+        () -> assertEquals(Path.of("source"), config.dir()),
+        () -> assertEquals(Path.of("dest"), config.dest()),
+        () -> assertNull(config.privateDest()),
+        () -> assertEquals(Path.of("template.html"), config.template())
+    );
+  }
+
+  @Test
+  public void parseConfigWithDefaultJobs() {
+    var args = new String[]{"source", "dest", "template.html"};
+    var config = Config.parseConfig(args);
+
+    assertEquals(Runtime.getRuntime().availableProcessors(), config.jobs());
+  }
+}
@@ -123,4 +123,52 @@ public class CompactMapTest {
     assertEquals("two", keys[1]);
     assertEquals("three", keys[2]);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldKeepTheLastValueOfADuplicateKey() {
+    var map = CompactMap.of("one", 1, "two", 2, "one", 3);
+
+    assertEquals(2, map.size());
+    assertEquals(Map.of("one", 3, "two", 2), map);
+    assertEquals("one", map.keySet().iterator().next());
+  }
+
+  @Test
+  public void forEachShouldMaintainInsertionOrder() {
+    var map = CompactMap.of("one", 1, "two", 2, "three", 3);
+    var builder = new StringBuilder();
+    map.forEach((key, value) -> builder.append(key).append('=').append(value).append(' '));
+
+    assertEquals("one=1 two=2 three=3 ", builder.toString());
+  }
+
+  @Test
+  public void shouldBeEqualToAMapWithTheSameEntries() {
+    var map = CompactMap.of("one", 1, "two", 2);
+
+    assertEquals(Map.of("one", 1, "two", 2), map);
+    assertEquals(Map.of("one", 1, "two", 2).hashCode(), map.hashCode());
+  }
+
+  @Test
+  public void attributesShouldBeHandedOffWithoutCopy() {
+    var attributes = CompactMap.ofAttributes("class", "section", "id", "intro");
+    var array = CompactMap.toAttributeArray(attributes);
+
+    assertArrayEquals(new String[] { "class", "section", "id", "intro" }, array);
+    assertSame(array, CompactMap.toAttributeArray(CompactMap.attributes(array)));
+    assertArrayEquals(new String[] { "one", "1" }, CompactMap.toAttributeArray(CompactMap.of("one", "1")));
+  }
+
+  @Test
+  public void shouldAccessTheEntriesByIndex() {
+    var map = CompactMap.of("one", 1, "two", 2);
+
+    assertAll(
+        () -> assertEquals("one", map.keyAt(0)),
+        () -> assertEquals(2, map.valueAt(1)),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> map.keyAt(2)),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> map.valueAt(-1))
+    );
+  }
+}
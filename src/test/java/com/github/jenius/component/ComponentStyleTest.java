@@ -3,6 +3,7 @@ package com.github.jenius.component;
 import org.junit.jupiter.api.Test;
 
 import java.util.Map;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -140,4 +141,61 @@ public class ComponentStyleTest {
     var discardComponent = style.lookup("unknown").get();
     assertSame(Component.discard(), discardComponent);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void renameShouldReturnTheSameComponent() {
+    var style = ComponentStyle.rename("oldName", "newName");
+
+    assertSame(style.lookup("oldName").orElseThrow(), style.lookup("oldName").orElseThrow());
+  }
+
+  @Test
+  public void compileShouldKeepTheOrderOfTheStyles() {
+    Component first = (_, _, _) -> {};
+    Component second = (_, _, _) -> {};
+    var style = ComponentStyle.anyMatch(
+        ComponentStyle.of("a", first),
+        ComponentStyle.anyMatch(ComponentStyle.of("a", "b", second), ComponentStyle.rename("c", "d"))
+    ).compile();
+
+    assertAll(
+        () -> assertSame(first, style.lookup("a").orElseThrow()),
+        () -> assertSame(second, style.lookup("b").orElseThrow()),
+        () -> assertTrue(style.lookup("c").isPresent()),
+        () -> assertTrue(style.lookup("unknown").isEmpty())
+    );
+  }
+
+  @Test
+  public void compileShouldKeepAUserDefinedStyle() {
+    Component first = (_, _, _) -> {};
+    Component second = (_, _, _) -> {};
+    ComponentStyle userStyle = name -> name.startsWith("x") ? Optional.of(second) : Optional.empty();
+    var style = ComponentStyle.anyMatch(
+        ComponentStyle.of("xa", first),
+        userStyle,
+        ComponentStyle.of("xb", first, "c", first)
+    ).compile();
+
+    assertAll(
+        () -> assertSame(first, style.lookup("xa").orElseThrow()),
+        () -> assertSame(second, style.lookup("xb").orElseThrow()),
+        () -> assertSame(first, style.lookup("c").orElseThrow()),
+        () -> assertTrue(style.lookup("unknown").isEmpty())
+    );
+  }
+
+  @Test
+  public void compileShouldStopAtAlwaysMatch() {
+    var style = ComponentStyle.anyMatch(
+        ComponentStyle.of("test", TEST_COMPONENT).ignoreAllOthers(),
+        ComponentStyle.of("other", TEST_COMPONENT)
+    ).compile();
+
+    assertAll(
+        () -> assertSame(TEST_COMPONENT, style.lookup("test").orElseThrow()),
+        () -> assertSame(Component.discard(), style.lookup("other").orElseThrow()),
+        () -> assertSame(style, style.compile())
+    );
+  }
+}
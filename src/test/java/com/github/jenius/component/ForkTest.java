@@ -0,0 +1,118 @@
+package com.github.jenius.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ForkTest {
+  private static XML.ContentHandler recorder(List<String> events) {
+    return new XML.ContentHandler() {
+      @Override
+      public void declaration(String version, String encoding) {
+        events.add("declaration");
+      }
+
+      @Override
+      public void startDocument() {
+        events.add("startDocument");
+      }
+
+      @Override
+      public void endDocument() {
+        events.add("endDocument");
+      }
+
+      @Override
+      public void startElement(String name, Map<String, String> attrs) {
+        events.add("<" + name + ">");
+      }
+
+      @Override
+      public void endElement(String name) {
+        events.add("</" + name + ">");
+      }
+
+      @Override
+      public void characters(String content) {
+        events.add(content);
+      }
+    };
+  }
+
+  @Test
+  public void nextElementIsOnlyWrittenToTheBranch() {
+    var first = new ArrayList<String>();
+    var second = new ArrayList<String>();
+    var fork = new Fork();
+    var handler = fork.handler(recorder(first), recorder(second));
+    handler.startElement("a", Map.of());
+    fork.nextElement(Fork.Branch.SECOND);
+    handler.startElement("b", Map.of());
+    handler.characters("text");
+    handler.endElement("b");
+    handler.startElement("c", Map.of());
+    handler.endElement("c");
+    handler.endElement("a");
+    assertAll(
+        () -> assertEquals(List.of("<a>", "<c>", "</c>", "</a>"), first),
+        () -> assertEquals(List.of("<a>", "<b>", "text", "</b>", "<c>", "</c>", "</a>"), second)
+    );
+  }
+
+  @Test
+  public void nextElementIsForgottenWhenTheCurrentElementEnds() {
+    var first = new ArrayList<String>();
+    var second = new ArrayList<String>();
+    var fork = new Fork();
+    var handler = fork.handler(recorder(first), recorder(second));
+    handler.startElement("a", Map.of());
+    handler.startElement("b", Map.of());
+    fork.nextElement(Fork.Branch.SECOND);  // no element is started, like a component that hides its element
+    handler.endElement("b");
+    handler.startElement("c", Map.of());
+    handler.endElement("c");
+    handler.endElement("a");
+    assertAll(
+        () -> assertEquals(List.of("<a>", "<b>", "</b>", "<c>", "</c>", "</a>"), first),
+        () -> assertEquals(first, second)
+    );
+  }
+
+  @Test
+  public void runKeepsTheNextElementOfTheCaller() {
+    var first = new ArrayList<String>();
+    var second = new ArrayList<String>();
+    var fork = new Fork();
+    var handler = fork.handler(recorder(first), recorder(second));
+    fork.nextElement(Fork.Branch.SECOND);
+    fork.run(Fork.Branch.FIRST, () -> {
+      handler.startElement("a", Map.of());
+      handler.endElement("a");
+    });
+    handler.startElement("b", Map.of());
+    handler.endElement("b");
+    assertAll(
+        () -> assertEquals(List.of("<a>", "</a>"), first),
+        () -> assertEquals(List.of("<b>", "</b>"), second)
+    );
+  }
+
+  @Test
+  public void runFailsIfTheNextElementIsNotStarted() {
+    var first = new ArrayList<String>();
+    var second = new ArrayList<String>();
+    var fork = new Fork();
+    var handler = fork.handler(recorder(first), recorder(second));
+    assertThrows(IllegalStateException.class, () -> fork.run(Fork.Branch.FIRST, () -> fork.nextElement(Fork.Branch.SECOND)));
+    handler.startElement("a", Map.of());
+    handler.endElement("a");
+    assertAll(
+        () -> assertEquals(List.of("<a>", "</a>"), first),
+        () -> assertEquals(first, second)
+    );
+  }
+}
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -100,6 +102,40 @@ public class NodeTest {
 
   }
 
+  @Test
+  public void shouldCreateNodeWithTheSameBlankTexts() throws IOException {
+    var document = XML.transform(new StringReader("<a> <b/> <c/> </a>"));
+    var a = document.getFirstElement().orElseThrow();
+    var parent = document.createNode("div", Map.of(), a.childNodes());
+
+    assertAll(
+        () -> assertEquals(0, a.childNodes().size()),
+        () -> assertEquals(List.of("#text", "b", "#text", "c", "#text"),
+            parent.childNodes().stream().map(Node::name).toList())
+    );
+  }
+
+  @Test
+  public void shouldMoveEachChildOfAMixedContent() throws IOException {
+    var document = XML.transform(new StringReader("<a> <b/>x<c/> <d/> y<e/> </a>"));
+    var a = document.getFirstElement().orElseThrow();
+    var div = document.createNode("div");
+    for (var child : List.copyOf(a.childNodes())) {
+      div.appendChild(child);
+    }
+    var texts = new ArrayList<String>();
+    for(var cursor = div.childCursor(); cursor.next();) {
+      texts.add(cursor.text());
+    }
+
+    assertAll(
+        () -> assertEquals(0, a.childNodes().size()),
+        () -> assertEquals(List.of("#text", "b", "#text", "c", "#text", "d", "#text", "e", "#text"),
+            div.childNodes().stream().map(Node::name).toList()),
+        () -> assertEquals(List.of(" ", "", "x", "", " ", "", " y", "", " "), texts)
+    );
+  }
+
   @Test
   public void shouldAppendChildNode() {
     var document = Node.createDocument();
@@ -178,6 +214,41 @@ public class NodeTest {
     assertEquals("hello", node.text());
   }
 
+  @Test
+  public void shouldMergeConsecutiveTexts() {
+    var document = Node.createDocument();
+    var node = document.createNode("div");
+    node.appendText("Hello");
+    node.appendText(" World");
+    var textCount = node.childNodes().size();
+    node.appendChild(document.createNode("br"));
+    node.appendText("!");
+
+    assertAll(
+        () -> assertEquals(1, textCount),
+        () -> assertEquals(3, node.childNodes().size()),
+        () -> assertEquals("Hello World !", node.text())
+    );
+  }
+
+  @Test
+  public void shouldMergeConsecutiveTextEvents() {
+    var document = Node.createDocument();
+    var handler = Node.asContentHandler(document);
+    handler.startElement("p", CompactMap.NO_ATTRIBUTES);
+    handler.characters("Alice");
+    handler.characters(" :: ");
+    handler.characters("Bob");
+    handler.endElement("p");
+    handler.endDocument();
+
+    var p = document.getFirstElement().orElseThrow();
+    assertAll(
+        () -> assertEquals(1, p.childNodes().size()),
+        () -> assertEquals("Alice :: Bob", p.text())
+    );
+  }
+
   @Test
   public void shouldTransformNodeCorrectly() throws IOException {
     var input = """
@@ -274,4 +345,203 @@ public class NodeTest {
     var found = document.find("p");
     assertEquals("Find me", found.orElseThrow().text());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldFindTheLastOutermostNode() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <a><title>1</title><b><title>2<title>3</title></title></b><c/></a>
+        """));
+    var a = document.getFirstElement().orElseThrow();
+    var b = a.path("b");
+
+    assertAll(
+        () -> assertEquals("23", document.find("title").orElseThrow().text()),
+        () -> assertEquals("23", b.find("title").orElseThrow().text()),
+        () -> assertTrue(a.path("c").find("title").isEmpty()),
+        () -> assertTrue(document.find("unknown").isEmpty())
+    );
+  }
+
+  @Test
+  public void shouldFindAMovedNode() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <a><b><title>1</title></b><c/></a>
+        """));
+    var a = document.getFirstElement().orElseThrow();
+    var title = document.find("title").orElseThrow();
+    title.removeFromParent();
+    var notFound = document.find("title");
+    a.path("c").appendChild(title);
+
+    assertAll(
+        () -> assertTrue(notFound.isEmpty()),
+        () -> assertTrue(a.path("b").find("title").isEmpty()),
+        () -> assertEquals("1", a.path("c").find("title").orElseThrow().text())
+    );
+  }
+
+  @Test
+  public void shouldFindTheNodeByNameUsingPath() {
+    var document = Node.createDocument();
+    var div = document.createNode("div");
+    div.appendChild(document.createNode("span"));
+    div.appendChild(document.createNode("p"));
+    document.appendChild(div);
+
+    assertEquals("p", document.path("div", "p").name());
+  }
+
+  @Test
+  public void shouldNormalizeTheWhitespacesOfTheText() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <title>
+          Hello   <b>big</b>
+          world<br/>again&nbsp;!
+        </title>
+        """));
+    assertEquals("Hello big world again !", document.getFirstElement().orElseThrow().text());
+  }
+
+  @Test
+  public void shouldMoveANodeAlreadyAppended() {
+    var document = Node.createDocument();
+    var div1 = document.createNode("div");
+    var div2 = document.createNode("div");
+    var span = document.createNode("span");
+    div1.appendChild(span);
+    div2.appendChild(span);
+
+    assertAll(
+        () -> assertTrue(div1.childNodes().isEmpty()),
+        () -> assertEquals(1, div2.childNodes().size())
+    );
+  }
+
+  @Test
+  public void shouldVisitTheChildElements() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <team><leader name="a"/>text<member name="b"/><leader name="c"/></team>
+        """));
+    var team = document.getFirstElement().orElseThrow();
+    var names = new ArrayList<String>();
+    team.forEachElement(node -> names.add(node.name()));
+    var leaders = new ArrayList<String>();
+    team.forEachElement("leader", node -> leaders.add(node.attributes().get("name")));
+
+    assertAll(
+        () -> assertEquals(List.of("leader", "member", "leader"), names),
+        () -> assertEquals(List.of("a", "c"), leaders),
+        () -> assertEquals("b", team.firstElementNamed("member").orElseThrow().attributes().get("name")),
+        () -> assertTrue(team.firstElementNamed("unknown").isEmpty())
+    );
+  }
+
+  @Test
+  public void shouldMoveACursorOnTheChildren() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <p>hello<b>world</b></p>
+        """));
+    var p = document.getFirstElement().orElseThrow();
+    var cursor = p.childCursor();
+
+    assertTrue(cursor.next());
+    assertEquals(0, cursor.index());
+    assertFalse(cursor.isElement());
+    assertEquals("hello", cursor.text());
+
+    assertTrue(cursor.next());
+    assertEquals(1, cursor.index());
+    assertTrue(cursor.isElement());
+    assertEquals("b", cursor.name());
+    assertEquals("world", cursor.node().text());
+
+    assertFalse(cursor.next());
+    assertFalse(cursor.next());
+    assertThrows(IllegalStateException.class, cursor::node);
+    assertFalse(p.childNodes().getFirst().childCursor().next());
+  }
+
+  @Test
+  public void shouldRemoveATextFromParent() {
+    var document = Node.createDocument();
+    var div = document.createNode("div");
+    div.appendText("a");
+    div.appendChild(document.createNode("br"));
+    div.appendText("b");
+    div.childNodes().get(2).removeFromParent();
+
+    assertAll(
+        () -> assertEquals(2, div.childNodes().size()),
+        () -> assertEquals("a", div.text())
+    );
+  }
+
+  @Test
+  public void shouldVisitTheSameEventsAsTheParsedText() throws IOException {
+    var input = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <foo a="1" b="2"><bar>text</bar>tail</foo>
+        """;
+    var expected = new StringWriter();
+    XML.transform(new StringReader(input), expected, XML.OutputKind.XML, ComponentStyle.of());
+    var actual = new StringWriter();
+    XML.transform(XML.transform(new StringReader(input)), actual, XML.OutputKind.XML, ComponentStyle.of());
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  private static XML.ContentHandler recorder(List<String> events, String skippedName) {
+    return new XML.ContentHandler() {
+      private String lastName;
+
+      @Override
+      public void declaration(String version, String encoding) {}
+      @Override
+      public void startDocument() {}
+      @Override
+      public void endDocument() {}
+
+      @Override
+      public void startElement(String name, Map<String, String> attrs) {
+        lastName = name;
+        events.add("start " + name);
+      }
+
+      @Override
+      public void endElement(String name) {
+        events.add("end " + name);
+      }
+
+      @Override
+      public void characters(String content) {
+        events.add("text " + content);
+      }
+
+      @Override
+      public boolean skipContent() {
+        return lastName.equals(skippedName);
+      }
+    };
+  }
+
+  @Test
+  public void shouldNotVisitTheContentOfASkippedElement() throws IOException {
+    var document = XML.transform(new StringReader("<foo><whizz><bar>text</bar></whizz><baz/></foo>"));
+    var events = new ArrayList<String>();
+    document.visit(recorder(events, "whizz"));
+    assertEquals(List.of("start foo", "start whizz", "end whizz", "start baz", "end baz", "end foo"), events);
+  }
+
+  @Test
+  public void shouldVisitADeeplyNestedDocument() throws IOException {
+    var depth = 100_000;
+    var input = "<a>".repeat(depth) + "text" + "</a>".repeat(depth);
+    var document = XML.transform(new StringReader(input));
+    var events = new ArrayList<String>();
+    document.visit(recorder(events, ""));
+    assertAll(
+        () -> assertEquals(2 * depth + 1, events.size()),
+        () -> assertEquals("text text", events.get(depth)),
+        () -> assertTrue(XML.transform(document, ComponentStyle.of()).getFirstElement().isPresent())
+    );
+  }
+}
@@ -0,0 +1,89 @@
+package com.github.jenius.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SelectorTest {
+  private static List<String> titles(List<Node> nodes) {
+    return nodes.stream().map(node -> node.attributes().getOrDefault("title", "")).toList();
+  }
+
+  @Test
+  public void selectChildren() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <td>
+          <section><exercise title="1"/><exercise/><div><exercise title="2"/></div></section>
+          <exercise title="3"/>
+          <section><exercise title="4"/></section>
+        </td>
+        """));
+    var selector = Selector.compile("section > exercise[title]");
+    assertEquals(List.of("1", "4"), titles(document.select(selector)));
+  }
+
+  @Test
+  public void selectDescendants() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <td>
+          <section><exercise title="1"/><div><exercise title="2"/></div></section>
+          <exercise title="3"/>
+        </td>
+        """));
+    assertAll(
+        () -> assertEquals(List.of("1", "2"), titles(document.select(Selector.compile("td section exercise")))),
+        () -> assertEquals(List.of("2"), titles(document.select(Selector.compile("section div > exercise")))),
+        () -> assertEquals(List.of("1", "2", "3"), titles(document.select(Selector.compile("td exercise")))),
+        () -> assertEquals(List.of("1", "2", "3"), titles(document.select(Selector.compile("[title]")))),
+        () -> assertEquals(List.of("2"), titles(document.select(Selector.compile("*[title='2']")))),
+        () -> assertEquals(List.of(), titles(document.select(Selector.compile("td > td"))))
+    );
+  }
+
+  @Test
+  public void selectInsideANode() throws IOException {
+    var document = XML.transform(new StringReader("""
+        <td>
+          <section><exercise title="1"/></section>
+          <section><exercise title="2"/><exercise title="3"/></section>
+        </td>
+        """));
+    var section = document.find("td").orElseThrow().elements().get(1);
+    var selector = Selector.compile("td exercise");
+    assertAll(
+        () -> assertEquals(List.of("2", "3"), titles(section.select(selector))),
+        () -> assertEquals("2", section.selectFirst(selector).orElseThrow().attributes().get("title")),
+        () -> assertEquals("1", document.selectFirst(selector).orElseThrow().attributes().get("title")),
+        () -> assertTrue(section.selectFirst(Selector.compile("div")).isEmpty())
+    );
+  }
+
+  @Test
+  public void selectInADetachedNode() {
+    var document = Node.createDocument();
+    var section = document.createNode("section");
+    section.appendChild(document.createNode("exercise", Map.of("title", "1")));
+    assertEquals(List.of("1"), titles(section.select(Selector.compile("section > exercise"))));
+  }
+
+  @Test
+  public void invalidSelectors() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> Selector.compile("")),
+        () -> assertThrows(IllegalArgumentException.class, () -> Selector.compile("a >")),
+        () -> assertThrows(IllegalArgumentException.class, () -> Selector.compile("a[title")),
+        () -> assertThrows(IllegalArgumentException.class, () -> Selector.compile("a[title='1]")),
+        () -> assertThrows(IllegalArgumentException.class, () -> Selector.compile("a]"))
+    );
+  }
+
+  @Test
+  public void selectorToString() {
+    assertEquals("section > exercise[title]", Selector.compile("section > exercise[title]").toString());
+  }
+}
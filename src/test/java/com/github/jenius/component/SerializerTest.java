@@ -0,0 +1,150 @@
+package com.github.jenius.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerializerTest {
+  private static String serialize(String input, XML.OutputKind outputKind) throws IOException {
+    var writer = new StringWriter();
+    XML.transform(new StringReader(input), writer, outputKind, ComponentStyle.of());
+    return writer.toString();
+  }
+
+  @Test
+  public void blocksAreIndented() throws IOException {
+    var input = """
+        <html><body><div><p>text</p></div></body></html>
+        """;
+    assertEquals("""
+        <html>
+          <body>
+            <div>
+              <p>text</p>
+            </div>
+          </body>
+        </html>""", serialize(input, XML.OutputKind.HTML));
+  }
+
+  @Test
+  public void inlineElementsAndTextFlow() throws IOException {
+    var input = """
+        <p>
+          some   <b>bold</b>
+          and <i>italic </i>text
+        </p>
+        """;
+    assertEquals("<p>some <b>bold</b> and <i>italic </i>text</p>", serialize(input, XML.OutputKind.HTML));
+  }
+
+  @Test
+  public void textAfterABlockStartsOnANewLine() throws IOException {
+    var input = """
+        <li>before<pre>code</pre>after</li>
+        """;
+    assertEquals("""
+        <li>before
+          <pre>code</pre>
+          after</li>""", serialize(input, XML.OutputKind.HTML));
+  }
+
+  @Test
+  public void whitespacesArePreservedInPre() throws IOException {
+    var input = """
+        <pre>
+          if (a &lt; b) {
+            <b>return</b>   a;
+          }
+        </pre>
+        """;
+    assertEquals("""
+        <pre>
+          if (a &lt; b) {
+            <b>return</b>   a;
+          }
+        </pre>""", serialize(input, XML.OutputKind.HTML));
+  }
+
+  @Test
+  public void scriptIsNotEscapedInHTML() throws IOException {
+    var input = """
+        <script>if (a &lt; b &amp;&amp; c) {}</script>
+        """;
+    assertAll(
+        () -> assertEquals("<script>if (a < b && c) {}</script>", serialize(input, XML.OutputKind.HTML)),
+        () -> assertEquals("<script>if (a &lt; b &amp;&amp; c) {}</script>", serialize(input, XML.OutputKind.XML))
+    );
+  }
+
+  @Test
+  public void emptyElements() throws IOException {
+    var input = """
+        <p>a<br/>b<img src="image.png"/><span></span></p>
+        """;
+    assertAll(
+        () -> assertEquals("""
+            <p>a
+              <br>
+              b<img src="image.png"><span></span></p>""", serialize(input, XML.OutputKind.HTML)),
+        () -> assertEquals("""
+            <p>a
+              <br />
+              b<img src="image.png" /><span /></p>""", serialize(input, XML.OutputKind.XML))
+    );
+  }
+
+  @Test
+  public void textAndAttributesAreEscaped() throws IOException {
+    var writer = new StringWriter();
+    var serializer = Serializer.serializer(writer, XML.OutputKind.HTML);
+    var attrs = new LinkedHashMap<String, String>();
+    attrs.put("title", "\"a\" & b");
+    serializer.startDocument();
+    serializer.startElement("span", attrs);
+    serializer.characters("1 < 2 & 3 > 2\u00a0!");
+    serializer.endElement("span");
+    serializer.endDocument();
+    assertEquals("<span title=\"&quot;a&quot; &amp; b\">1 &lt; 2 &amp; 3 &gt; 2&nbsp;!</span>", writer.toString());
+  }
+
+  @Test
+  public void declaration() throws IOException {
+    var input = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <foo>bar</foo>
+        """;
+    assertEquals("""
+        <?xml version="1.0" encoding="UTF-8"?>
+        <foo>bar</foo>""", serialize(input, XML.OutputKind.XML));
+  }
+
+  @Test
+  public void ioExceptionIsUnwrapped() {
+    var writer = new Writer() {
+      @Override
+      public void write(char[] buffer, int offset, int length) throws IOException {
+        throw new IOException("disk full");
+      }
+
+      @Override
+      public void flush() {}
+
+      @Override
+      public void close() {}
+    };
+    var serializer = Serializer.serializer(writer, XML.OutputKind.HTML);
+    assertAll(
+        () -> assertThrows(UncheckedIOException.class, () -> serializer.startElement("div", Map.of())),
+        () -> assertThrows(IOException.class,
+            () -> XML.transform(new StringReader("<div/>"), writer, XML.OutputKind.HTML, ComponentStyle.of()))
+    );
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.jenius.component;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SymbolsTest {
+  @Test
+  public void nameIsASingleInstance() {
+    var name = new String("section");
+    assertAll(
+        () -> assertNotSame("section", name),
+        () -> assertSame("section", Symbols.name(name)),
+        () -> assertSame(Symbols.name(name), Symbols.name(new String(name)))
+    );
+  }
+
+  @Test
+  public void cacheReturnsTheSameInstance() {
+    var cache = new Symbols.Cache();
+    var buffer = "<div class='x'><span>".toCharArray();
+    assertAll(
+        () -> assertSame("div", cache.name(buffer, 1, 4)),
+        () -> assertSame("class", cache.name(buffer, 5, 10)),
+        () -> assertSame("span", cache.name(buffer, 16, 20)),
+        () -> assertSame("div", cache.name(buffer, 1, 4))
+    );
+  }
+
+  @Test
+  public void cacheGrows() {
+    var cache = new Symbols.Cache();
+    for(var i = 0; i < 1_000; i++) {
+      var buffer = ("name" + i).toCharArray();
+      assertEquals("name" + i, cache.name(buffer, 0, buffer.length));
+    }
+    var buffer = "name42".toCharArray();
+    assertSame(Symbols.name("name42"), cache.name(buffer, 0, buffer.length));
+  }
+
+  @Test
+  public void symbolHasTheHTMLProperties() {
+    assertAll(
+        () -> assertTrue(Symbols.symbol("div").is(Symbols.HTML)),
+        () -> assertTrue(Symbols.symbol("DIV").is(Symbols.HTML)),
+        () -> assertFalse(Symbols.symbol("exercise").is(Symbols.HTML)),
+        () -> assertTrue(Symbols.symbol("div").is(Symbols.BLOCK)),
+        () -> assertTrue(Symbols.symbol("br").is(Symbols.VOID)),
+        () -> assertTrue(Symbols.symbol("pre").is(Symbols.PRESERVE_WHITESPACE)),
+        () -> assertTrue(Symbols.symbol("script").is(Symbols.RAW_TEXT)),
+        () -> assertFalse(Symbols.symbol("span").is(Symbols.BLOCK | Symbols.INLINE_FORMATTED))
+    );
+  }
+}
@@ -0,0 +1,74 @@
+package com.github.jenius.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateTest {
+  private static final String TEMPLATE = """
+      <html>
+        <head><title><insert-title/></title></head>
+        <body>
+          <header>Header &amp; <bold>logo</bold></header>
+          <insert-content>default content</insert-content>
+          <footer>Footer</footer>
+        </body>
+      </html>
+      """;
+
+  private static ComponentStyle pageStyle(String title, String content) {
+    return ComponentStyle.of(
+        "insert-title", Component.of((_, _, b) -> b.text(title)),
+        "insert-content", Component.of((_, _, b) -> b.node("div", c -> c.text(content)))
+    );
+  }
+
+  private static String render(Template template, ComponentStyle pageStyle) throws IOException {
+    var writer = new StringWriter();
+    template.render(writer, pageStyle);
+    return writer.toString();
+  }
+
+  @Test
+  public void renderIsTheSameAsTransform() throws IOException {
+    var staticStyle = ComponentStyle.rename("header", "div", "footer", "div", "bold", "b");
+    var template = XML.transform(new StringReader(TEMPLATE));
+    var compiled = Template.compile(template, XML.OutputKind.HTML, staticStyle, Set.of("insert-title", "insert-content"));
+
+    for(var page : new String[] { "one", "two", "three" }) {
+      var pageStyle = pageStyle("title " + page, "content " + page);
+      var expected = new StringWriter();
+      XML.transform(template, expected, XML.OutputKind.HTML, ComponentStyle.anyMatch(pageStyle, staticStyle));
+      assertEquals(expected.toString(), render(compiled, pageStyle));
+    }
+  }
+
+  @Test
+  public void staticElementsAreRewrittenOnce() throws IOException {
+    var counter = new int[1];
+    var staticStyle = ComponentStyle.of("header", "footer", "bold", Component.of((name, attrs, b) -> {
+      counter[0]++;
+      b.node("span", attrs);
+    }));
+    var template = XML.transform(new StringReader(TEMPLATE));
+    var compiled = Template.compile(template, XML.OutputKind.HTML, staticStyle, Set.of("insert-title", "insert-content"));
+
+    render(compiled, pageStyle("title", "content"));
+    render(compiled, pageStyle("title 2", "content 2"));
+    assertEquals(3, counter[0]);
+  }
+
+  @Test
+  public void slotContentIsRenderedByThePageStyle() throws IOException {
+    var template = XML.transform(new StringReader(TEMPLATE));
+    var compiled = Template.compile(template, XML.OutputKind.HTML, ComponentStyle.of(), Set.of("insert-content"));
+
+    var output = render(compiled, ComponentStyle.of("insert-content", Component.identity()));
+    assertTrue(output.contains("<insert-content>default content</insert-content>"), output);
+  }
+}
@@ -86,6 +86,28 @@ public class XMLTest {
     assertSameDocument(expected, writer.toString());
   }
 
+  @Test
+  public void replaceNodeWithTheSameAttributeTwice() throws IOException {
+    var input = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <foo>
+          This is a test
+        </foo>
+        """;
+    var expected = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <bar one="2">
+          This is a test
+        </bar>
+        """;
+    var writer = new StringWriter();
+    var style = ComponentStyle.of(
+        "foo", (_, _, b) ->
+            b.node("bar", "one", "1", "one", "2"));
+    XML.transform(new StringReader(input), writer, XML.OutputKind.XML, style);
+    assertSameDocument(expected, writer.toString());
+  }
+
   @Test
   public void replaceNodeWithChildren() throws IOException {
     var input = """
@@ -613,4 +635,35 @@ public class XMLTest {
     XML.transform(new StringReader(input), writer, XML.OutputKind.XML, style);
     assertSameDocument(expected, writer.toString());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void collectATextSentInSeveralParts() throws IOException {
+    var writer = new StringWriter();
+    var style = ComponentStyle.of(
+        "foo", (_, _, b) -> b.collect((n, b2) -> b2.include(n.createNode("whizz", n.childNodes()))));
+    var filter = XML.filter(Serializer.serializer(writer, XML.OutputKind.XML), style);
+    filter.startElement("foo", CompactMap.NO_ATTRIBUTES);
+    filter.characters("a");
+    filter.characters("b");
+    filter.startElement("bar", CompactMap.NO_ATTRIBUTES);
+    filter.characters("c");
+    filter.characters("");
+    filter.characters("d");
+    filter.endElement("bar");
+    filter.characters("e");
+    filter.endElement("foo");
+    assertSameDocument("<whizz>ab<bar>cd</bar>e</whizz>", writer.toString());
+  }
+
+  @Test
+  public void reuseFilterAfterReset() throws IOException {
+    var writer = new StringWriter();
+    var style = ComponentStyle.of(
+        "foo", (_, _, b) -> b.collect((n, b2) -> b2.node("bar", b3 -> b3.text(n.text()))));
+    var filter = XML.filter(Serializer.serializer(writer, XML.OutputKind.XML), style);
+    filter.startElement("foo", CompactMap.NO_ATTRIBUTES);  // never ended
+    filter.reset();
+    XML.transform(new StringReader("<root><foo>text</foo></root>")).visit(filter);
+    assertSameDocument("<root><bar>text</bar></root>", writer.toString());
+  }
+}
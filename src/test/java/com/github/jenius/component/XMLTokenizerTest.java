@@ -0,0 +1,228 @@
+package com.github.jenius.component;
+
+import org.jsoup.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class XMLTokenizerTest {
+  private static XML.ContentHandler recorder(List<String> events) {
+    return new XML.ContentHandler() {
+      @Override
+      public void declaration(String version, String encoding) {
+        events.add("declaration " + version + " " + encoding);
+      }
+
+      @Override
+      public void startDocument() {
+        events.add("startDocument");
+      }
+
+      @Override
+      public void endDocument() {
+        events.add("endDocument");
+      }
+
+      @Override
+      public void startElement(String name, Map<String, String> attrs) {
+        events.add("startElement " + name + " " + attrs);
+      }
+
+      @Override
+      public void endElement(String name) {
+        events.add("endElement " + name);
+      }
+
+      @Override
+      public void characters(String content) {
+        events.add("characters [" + content + "]");
+      }
+    };
+  }
+
+  private static List<String> tokenizerEvents(String text) throws IOException {
+    var events = new ArrayList<String>();
+    XMLTokenizer.parse(new StringReader(text), recorder(events));
+    return events;
+  }
+
+  private static List<String> jsoupEvents(String text) {
+    var events = new ArrayList<String>();
+    Node.visit(Parser.xmlParser().parseInput(text, ""), recorder(events));
+    return events;
+  }
+
+  private static void assertConform(String text) throws IOException {
+    assertEquals(jsoupEvents(text), tokenizerEvents(text), text);
+  }
+
+  // the XML parser of jsoup keeps a NUL or a lone surrogate, the tokenizer replaces them by U+FFFD
+  private static void assertConformReplacingInvalidCodePoints(String text) throws IOException {
+    var expected = jsoupEvents(text).stream()
+        .map(event -> event.replaceAll("[\\x{0}\\x{D800}-\\x{DFFF}]", "\uFFFD"))
+        .toList();
+    assertEquals(expected, tokenizerEvents(text), text);
+  }
+
+  @Test
+  public void events() throws IOException {
+    var text = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <!DOCTYPE td PUBLIC "-//University of Marne-la-Vallee//DTD tipi//EN" "tipi.dtd">
+        <td answer="true"><title>Title</title><br/>text</td>
+        """;
+    assertEquals(List.of(
+        "startDocument",
+        "declaration 1.0 UTF-8",
+        "startElement td {answer=true}",
+        "startElement title {}",
+        "characters [Title]",
+        "endElement title",
+        "startElement br {}",
+        "endElement br",
+        "characters [text]",
+        "endElement td",
+        "endDocument"
+    ), tokenizerEvents(text));
+  }
+
+  @Test
+  public void entitiesAndCDATA() throws IOException {
+    var text = """
+        <code a="&lt;&amp;&quot;&#65;">if (a &lt; b &amp;&amp; c) {}&nbsp;&#x42;<![CDATA[<b>&amp;</b>]]></code>
+        """;
+    assertEquals(List.of(
+        "startDocument",
+        "startElement code {a=<&\"A}",
+        "characters [if (a < b && c) {}\u00a0B]",
+        "characters [<b>&amp;</b>]",
+        "endElement code",
+        "endDocument"
+    ), tokenizerEvents(text));
+  }
+
+  @Test
+  public void attributeViewIsStable() {
+    var events = new ArrayList<Map<String, String>>();
+    var buffer = "<a x='1' y='2'><b z='3'/></a>".toCharArray();
+    XMLTokenizer.parse(buffer, buffer.length, new XML.ContentHandler() {
+      @Override
+      public void declaration(String version, String encoding) {}
+      @Override
+      public void startDocument() {}
+      @Override
+      public void endDocument() {}
+      @Override
+      public void startElement(String name, Map<String, String> attrs) {
+        events.add(attrs);
+      }
+      @Override
+      public void endElement(String name) {}
+      @Override
+      public void characters(String content) {}
+    });
+    assertEquals(List.of(Map.of("x", "1", "y", "2"), Map.of("z", "3")), events);
+  }
+
+  @Test
+  public void transformKeepsTheTextOfTheXMLParser() throws IOException {
+    var text = "<title>a<br/>b<p>c</p>d</title>";
+    var expected = Parser.xmlParser().parseInput(text, "").child(0).text();
+    assertEquals(expected, XML.transform(new StringReader(text)).getFirstElement().orElseThrow().text());
+  }
+
+  @Test
+  public void conformance() throws IOException {
+    var texts = List.of(
+        "<a>x &amp y &copy z &copy; &foo; &#65;&#x42; &#xZZ; < b &lt</a>",
+        "<a t=\"&copy=x &copyx &amp &notin; &notit; &lt3\">&copyx &notit; &#x80;|&#65|&#99999999999;</a>",
+        "<a b=1 c d=\"&amp;&copy;x\" b=\"2\" e='q' f=g&lt;h x=\"1\" X=\"2\">t</a>",
+        "<a b='x\"y' c=\"it's\" d = \"1\" ></a >",
+        "<a b=1/><c d=x/>t</c>",
+        "<a><b><c></a>after",
+        "<a></b>x</a>",
+        "<A Foo=\"1\">x</a></A>",
+        "<a>x</b>y</>z<!---->w</a>",
+        "<a>x<!-- c -->y<![CDATA[<z>&amp;]]>w<![CDATA[]]>v</a>",
+        "<a><!-->z<!--->w<!-- a --!>v<!-- b --->u</a>",
+        "<?xml version=\"1.0\"?><?pi foo?>\n<!DOCTYPE x><a/>  <b/>",
+        "<a>text<!DOCTYPE y>z<?pi?>w</a>",
+        "<a>x<?xml version=\"1.0\" encoding=\"x\"?>y<?xml version='1.0' standalone=\"no\"?><? ?><?>z<?a b>c</a>",
+        "<a>x<!foo b?c d/e>y<!1foo>z</a>",
+        "<a><b/></ a></a>",
+        "<a>]]> x <!-- unterminated",
+        "<script>if (a < b && c) {}</script>",
+        "<a>x\r\ny\rz</a>",
+        "<a>x<b",
+        "<a>x<b c=\"1",
+        "<a>x</b",
+        "<a>x</",
+        "<a>x<",
+        "<a>x<![CDATA[abc",
+        "<a>x<?xml version=\"1.0\"",
+        "<a b=\"&amp;\"c=d e=f&lt;g>"
+    );
+    for(var text : texts) {
+      assertConform(text);
+    }
+  }
+
+  @Test
+  public void conformanceOfInvalidNumericReferences() throws IOException {
+    var texts = List.of(
+        "<a>&#0;|&#x0;|&#00;x</a>",
+        "<a>&#55296;|&#xD800;|&#xdbff;|&#xDC00;|&#xDFFF;|&#57343;</a>",
+        "<a t=\"&#0;&#xD800;\">&#x10000;|&#65;</a>"
+    );
+    for(var text : texts) {
+      assertConformReplacingInvalidCodePoints(text);
+    }
+    // each reference of a surrogate pair is a lone surrogate
+    assertEquals(List.of("startDocument", "startElement a {}", "characters [\uFFFD|\uFFFD\uFFFD]", "endElement a", "endDocument"),
+        tokenizerEvents("<a>&#0;|&#xDBFF;&#xDC00;</a>"));
+  }
+
+  @Test
+  public void conformanceOfTheResources() throws IOException, URISyntaxException {
+    var root = Path.of(Objects.requireNonNull(XMLTokenizerTest.class.getResource("/com/github/jenius/talc")).toURI());
+    List<Path> paths;
+    try(var stream = Files.walk(root)) {
+      paths = stream
+          .filter(path -> path.toString().matches(".*\\.(xumlv|html|svg)"))
+          .toList();
+    }
+    assertFalse(paths.isEmpty());
+    for(var path : paths) {
+      assertConform(Files.readString(path));
+    }
+  }
+
+  @Test
+  public void conformanceOfRandomDocuments() throws IOException {
+    var fragments = new String[] {
+        "<a>", "</a>", "<b x='1'>", "</b>", "<c/>", "<d y=\"&amp;\" z=2>", "</d>",
+        "text", " ", "\n", "&lt;", "&amp", "&nbsp;", "&#65;", "&", "<", ">", "</", "</>",
+        "<!-- comment -->", "<![CDATA[<a>]]>", "<?xml version=\"1.0\"?>", "<!DOCTYPE a>",
+        "<a", "<?x", "<!y", "/", "?", "=", "'", "\"", "-->", "]]>"
+    };
+    var random = new Random(0);
+    for(var i = 0; i < 5_000; i++) {
+      var builder = new StringBuilder();
+      for(var j = random.nextInt(12); j >= 0; j--) {
+        builder.append(fragments[random.nextInt(fragments.length)]);
+      }
+      assertConform(builder.toString());
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package com.github.jenius.talc;
+
+import com.github.jenius.component.Node;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentManagerTest {
+  private static Path path(String filename) throws URISyntaxException {
+    var resource = DocumentManagerTest.class.getResource(filename);
+    assert resource != null;
+    return Path.of(resource.toURI());
+  }
+
+  @Test
+  public void fileMetadataIsLoadedOnce() throws URISyntaxException, IOException {
+    var root = path("root");
+    var file = root.resolve("Java").resolve("td01.xumlv");
+    var manager = new DocumentManager(root);
+
+    var metadata = manager.getFileMetadata(file);
+    assertAll(
+        () -> assertSame(metadata, manager.getFileMetadata(file)),
+        () -> assertEquals(metadata.summary(), manager.getMetadata(file).summary())
+    );
+  }
+
+  @Test
+  public void fileMetadataIsLoadedOnceByConcurrentCallers() throws URISyntaxException, InterruptedException, ExecutionException {
+    var root = path("root");
+    var file = root.resolve("Java").resolve("index.xumlv");
+    var manager = new DocumentManager(root);
+
+    var futures = new ArrayList<Future<Metadata.File>>();
+    try(var executor = Executors.newFixedThreadPool(8)) {
+      for(var i = 0; i < 32; i++) {
+        futures.add(executor.submit((Callable<Metadata.File>) () -> manager.getFileMetadata(file)));
+      }
+    }
+    var metadata = futures.getFirst().get();
+    for(var future : futures) {
+      assertSame(metadata, future.get());
+    }
+  }
+
+  @Test
+  public void failureIsCached() throws URISyntaxException {
+    var root = path("root");
+    var file = root.resolve("Java").resolve("td42.xumlv");
+    var manager = new DocumentManager(root);
+
+    var e1 = assertThrows(IOException.class, () -> manager.getFileMetadata(file));
+    var e2 = assertThrows(IOException.class, () -> manager.getFileMetadata(file));
+    assertAll(
+        () -> assertNotSame(e1, e2),
+        () -> assertSame(e1.getCause(), e2.getCause())
+    );
+  }
+
+  @Test
+  public void metadataOfAMissingFileIsADir() throws URISyntaxException {
+    var root = path("root");
+    var file = root.resolve("Java").resolve("td42.xumlv");
+    var manager = new DocumentManager(root);
+
+    var metadata = manager.getMetadata(file);
+    assertEquals(new Metadata.Dir(file, new Summary("td42")), metadata);
+  }
+
+  @Test
+  public void metadataOfAnIndexedFileIsNotParsed() throws URISyntaxException {
+    var root = path("root");
+    var file = root.resolve("Java").resolve("td01.xumlv");
+    var summaryIndex = SummaryIndex.empty();
+    var summary = new Summary("from the index", List.of("exercise"));
+    summaryIndex.put(file, new DocumentManager(root).getContentHash(file), summary);
+    var manager = new DocumentManager(root, summaryIndex);
+
+    assertEquals(new Metadata.Indexed(file, summary), manager.getMetadata(file));
+  }
+
+  @Test
+  public void metadataOfAChangedFileIsParsed() throws URISyntaxException {
+    var root = path("root");
+    var file = root.resolve("Java").resolve("td01.xumlv");
+    var summaryIndex = SummaryIndex.empty();
+    summaryIndex.put(file, 42, new Summary("from the index"));
+    var manager = new DocumentManager(root, summaryIndex);
+
+    var metadata = manager.getMetadata(file);
+    assertAll(
+        () -> assertInstanceOf(Metadata.File.class, metadata),
+        () -> assertEquals("Premiers pas en Java, chaînes de caractères, tableaux, boucles", metadata.summary().title()),
+        () -> assertEquals(Optional.of(metadata.summary()), summaryIndex.get(file, manager.getContentHash(file)))
+    );
+  }
+
+  @Test
+  public void summaryIndexIsPersistent(@TempDir Path dest) throws IOException, URISyntaxException {
+    var root = path("root");
+    var file = root.resolve("Java").resolve("td01.xumlv");
+    var summaryIndex = SummaryIndex.load(dest, root);
+    var manager = new DocumentManager(root, summaryIndex);
+    var summary = manager.getMetadata(file).summary();
+    summaryIndex.save();
+
+    var summaryIndex2 = SummaryIndex.load(dest, root);
+    assertEquals(Optional.of(summary), summaryIndex2.get(file, manager.getContentHash(file)));
+  }
+
+  @Test
+  public void summaryIndexIsRelativeToTheRoot(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var file = Files.writeString(root.resolve("td.xumlv"), "<td><title>TD</title></td>");
+    var summaryIndex = SummaryIndex.load(dest, root);
+    var manager = new DocumentManager(root, summaryIndex);
+    var summary = manager.getMetadata(file).summary();
+    summaryIndex.save();
+
+    var otherRoot = dest.resolve("..").resolve("root");
+    var summaryIndex2 = SummaryIndex.load(dest, otherRoot);
+    assertAll(
+        () -> assertFalse(new String(Files.readAllBytes(dest.resolve(SummaryIndex.FILENAME))).contains(tmp.toString())),
+        () -> assertEquals(Optional.of(summary), summaryIndex2.get(otherRoot.resolve("td.xumlv"), manager.getContentHash(file)))
+    );
+  }
+
+  @Test
+  public void summaryIndexThatCanNotBeReadIsEmpty(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var file = Files.writeString(root.resolve("td.xumlv"), "<td><title>TD</title></td>");
+    var summaryIndex = SummaryIndex.load(dest, root);
+    var manager = new DocumentManager(root, summaryIndex);
+    manager.getMetadata(file);
+    summaryIndex.save();
+    var indexFile = dest.resolve(SummaryIndex.FILENAME);
+    var bytes = Files.readAllBytes(indexFile);
+
+    // truncated
+    Files.write(indexFile, Arrays.copyOf(bytes, bytes.length - 3));
+    assertEquals(Optional.empty(), SummaryIndex.load(dest, root).get(file, manager.getContentHash(file)));
+
+    // a huge number of entries
+    var corrupted = bytes.clone();
+    corrupted[8] = 0x7f;
+    Files.write(indexFile, corrupted);
+    assertEquals(Optional.empty(), SummaryIndex.load(dest, root).get(file, manager.getContentHash(file)));
+  }
+
+  @Test
+  public void invalidateForgetsAFile(@TempDir Path root) throws IOException {
+    var file = Files.writeString(root.resolve("td.xumlv"), "<td><title>one</title></td>");
+    var manager = new DocumentManager(root);
+    assertEquals("one", manager.getMetadata(file).summary().title());
+
+    Files.writeString(file, "<td><title>two</title></td>");
+    assertEquals("one", manager.getMetadata(file).summary().title());
+    manager.invalidate(file);
+    assertEquals("two", manager.getMetadata(file).summary().title());
+  }
+
+  @Test
+  public void invalidateAnIndexForgetsItsDirectory(@TempDir Path root) throws IOException {
+    var dir = Files.createDirectory(root.resolve("dir"));
+    var manager = new DocumentManager(root);
+    assertEquals(new Metadata.Dir(dir, new Summary("dir")), manager.getMetadata(dir));
+
+    var index = Files.writeString(dir.resolve("index.xumlv"), "<index><title>Index</title></index>");
+    manager.invalidate(index);
+    assertEquals("Index", manager.getMetadata(dir).summary().title());
+  }
+
+  @Test
+  public void fileMetadataStripsTheTitleAndTheInfos(@TempDir Path root) throws IOException {
+    var file = Files.writeString(root.resolve("td.xumlv"), """
+        <td>
+          <title>Title</title>
+          <infos><p>infos</p></infos>
+          <exercise title=" first "><exercise title="nested"/></exercise>
+          <exercise title=" "/>
+          <div><exercise title="second"/></div>
+        </td>
+        """);
+    var manager = new DocumentManager(root);
+
+    var metadata = manager.getFileMetadata(file);
+    var td = metadata.document().getFirstElement().orElseThrow();
+    assertAll(
+        () -> assertEquals(new Summary("Title", List.of("first", "second")), metadata.summary()),
+        () -> assertEquals("infos", metadata.infosOpt().orElseThrow().text()),
+        () -> assertTrue(td.find("title").isEmpty()),
+        () -> assertTrue(td.find("infos").isEmpty()),
+        () -> assertEquals(List.of("exercise", "exercise", "div"), td.elements().stream().map(Node::name).toList())
+    );
+  }
+
+  @Test
+  public void fileMetadataOfADeeplyNestedDocument(@TempDir Path root) throws IOException {
+    var depth = 100_000;
+    var file = Files.writeString(root.resolve("td.xumlv"),
+        "<td><title>Title</title>" + "<div>".repeat(depth) + "<exercise title=\"deep\"/>" + "</div>".repeat(depth) + "</td>");
+    var manager = new DocumentManager(root);
+
+    assertEquals(new Summary("Title", List.of("deep")), manager.getFileMetadata(file).summary());
+  }
+}
@@ -1,6 +1,7 @@
 package com.github.jenius.talc;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -193,4 +194,83 @@ public class GeneratorTest {
       }
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void generateSeveralPagesOnTheSameThread(@TempDir Path dest) throws URISyntaxException, IOException {
+    var template = path("templates/template.html");
+    var root = path("root");
+    var file = root.resolve("System", "td02.xumlv");
+    var templateNode = DocumentManager.readPathAsDocument(template);
+    var generator = new Generator(new DocumentManager(root), mapping(), templateNode);
+
+    var publicPage = dest.resolve("public.html");
+    var privatePage = dest.resolve("private.html");
+    var publicPage2 = dest.resolve("public2.html");
+    var publicDependencies = generator.generate(file, publicPage, false);
+    var privateDependencies = generator.generate(file, privatePage, true);
+    var publicDependencies2 = generator.generate(file, publicPage2, false);
+    assertAll(
+        () -> assertFalse(Files.readString(publicPage).contains("class=\"answer\"")),
+        () -> assertTrue(Files.readString(privatePage).contains("class=\"answer\"")),
+        () -> assertEquals(Files.readString(publicPage), Files.readString(publicPage2)),
+        () -> assertEquals(publicDependencies, privateDependencies),
+        () -> assertEquals(publicDependencies, publicDependencies2)
+    );
+  }
+
+  @Test
+  public void generatePublicAndPrivatePagesAtOnce(@TempDir Path dest) throws URISyntaxException, IOException {
+    var template = path("templates/template.html");
+    var root = path("root");
+    var file = root.resolve("System", "td02.xumlv");
+    var templateNode = DocumentManager.readPathAsDocument(template);
+    var generator = new Generator(new DocumentManager(root), mapping(), templateNode);
+
+    var publicPage = dest.resolve("public.html");
+    var privatePage = dest.resolve("private.html");
+    var dependencyMap = generator.generate(file, dest.resolve("public2.html"), dest.resolve("private2.html"));
+    var publicDependencies = generator.generate(file, publicPage, false);
+    var privateDependencies = generator.generate(file, privatePage, true);
+    assertAll(
+        () -> assertEquals(Files.readString(publicPage), Files.readString(dest.resolve("public2.html"))),
+        () -> assertEquals(Files.readString(privatePage), Files.readString(dest.resolve("private2.html"))),
+        () -> assertEquals(publicDependencies, dependencyMap.get(Status.Kind.PUBLIC)),
+        () -> assertEquals(privateDependencies, dependencyMap.get(Status.Kind.PRIVATE))
+    );
+  }
+
+  @Test
+  public void generatePublicAndPrivateDraftPagesAtOnce(@TempDir Path dir) throws URISyntaxException, IOException {
+    var template = path("templates/template.html");
+    var root = Files.createDirectory(dir.resolve("root"));
+    Files.writeString(root.resolve("index.xumlv"), """
+        <index><title>Index</title><tdref name="draft.xumlv"/></index>
+        """);
+    var file = Files.writeString(root.resolve("draft.xumlv"), """
+        <td draft="true">
+          <title>Draft</title>
+          <exercise title="Exercise"><paragraph>Question</paragraph><answer>Solution</answer></exercise>
+        </td>
+        """);
+    var templateNode = DocumentManager.readPathAsDocument(template);
+    var generator = new Generator(new DocumentManager(root), mapping(), templateNode);
+
+    var publicPage = dir.resolve("public.html");
+    var privatePage = dir.resolve("private.html");
+    generator.generate(file, publicPage, privatePage);
+    var publicPage2 = dir.resolve("public2.html");
+    var privatePage2 = dir.resolve("private2.html");
+    generator.generate(file, publicPage2, false);
+    generator.generate(file, privatePage2, true);
+    var publicText = Files.readString(publicPage);
+    var privateText = Files.readString(privatePage);
+    assertAll(
+        () -> assertTrue(publicText.contains("A venir")),
+        () -> assertFalse(publicText.contains("Question")),
+        () -> assertTrue(privateText.contains("Question")),
+        () -> assertTrue(privateText.contains("Solution")),
+        () -> assertEquals(Files.readString(publicPage2), publicText),
+        () -> assertEquals(Files.readString(privatePage2), privateText)
+    );
+  }
+}
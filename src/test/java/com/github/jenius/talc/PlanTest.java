@@ -1,11 +1,17 @@
 package com.github.jenius.talc;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.github.jenius.talc.Status.Kind.PRIVATE;
 import static com.github.jenius.talc.Status.Kind.PUBLIC;
@@ -169,4 +175,224 @@ public class PlanTest {
 
     assertEquals(plan2,plan);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldNotUpdateATouchedFileWithTheSameContent(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var file = Files.writeString(root.resolve("file.txt"), "hello");
+    var destFile = Files.copy(file, dest.resolve("file.txt"));
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var manifest = planFactory.diff(root, dest, null).manifest(PUBLIC).orElseThrow();
+    manifest.update(file, destFile);
+    manifest.save();
+    Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(destFile).toMillis() + 10_000));
+
+    assertEquals(new Plan(), planFactory.diff(root, dest, null));
+  }
+
+  @Test
+  public void shouldUpdateAFileWithADifferentContent(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var file = Files.writeString(root.resolve("file.txt"), "hello");
+    var destFile = Files.copy(file, dest.resolve("file.txt"));
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var manifest = planFactory.diff(root, dest, null).manifest(PUBLIC).orElseThrow();
+    manifest.update(file, destFile);
+    manifest.save();
+    Files.writeString(file, "hello world");
+    Files.setLastModifiedTime(file, Files.getLastModifiedTime(destFile));
+
+    var plan = new Plan();
+    plan.add(file, new Status(UPDATED, PUBLIC, destFile));
+    assertEquals(plan, planFactory.diff(root, dest, null));
+  }
+
+  @Test
+  public void shouldAlwaysUpdateWhenForced(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var file = Files.writeString(root.resolve("file.txt"), "hello");
+    var destFile = Files.copy(file, dest.resolve("file.txt"));
+    var manifest = Manifest.load(dest, root);
+    manifest.update(file, destFile);
+    manifest.save();
+    var planFactory = new PlanFactory(PlanTest::mapping, true);
+
+    var plan = new Plan();
+    plan.add(file, new Status(UPDATED, PUBLIC, destFile));
+    assertEquals(plan, planFactory.diff(root, dest, null));
+  }
+
+  @Test
+  public void shouldUpdateAPageOnlyWhenTheSummaryOfADependencyChanges(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var page = Files.writeString(root.resolve("a.txt"), "page");
+    var td = Files.writeString(root.resolve("td.xumlv"), """
+        <td><title>TD</title><exercise title="one"><paragraph>text</paragraph></exercise></td>
+        """);
+    var destPage = Files.copy(page, dest.resolve("a.txt"));
+    var destTd = Files.copy(td, dest.resolve("td.html"));
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var manifest = planFactory.diff(root, dest, null).manifest(PUBLIC).orElseThrow();
+    manifest.update(page, destPage, Set.of(new Dependency(Dependency.Kind.SUMMARY, td)), new DocumentManager(root));
+    manifest.update(td, destTd);
+    manifest.save();
+
+    // change the content but not the summary
+    Files.writeString(td, """
+        <td><title>TD</title><exercise title="one"><paragraph>another text</paragraph></exercise></td>
+        """);
+    Files.copy(td, destTd, StandardCopyOption.REPLACE_EXISTING);
+    manifest.update(td, destTd);
+    manifest.save();
+    assertEquals(new Plan(), planFactory.diff(root, dest, null));
+
+    // change the summary
+    Files.writeString(td, """
+        <td><title>TD</title><exercise title="two"><paragraph>another text</paragraph></exercise></td>
+        """);
+    Files.copy(td, destTd, StandardCopyOption.REPLACE_EXISTING);
+    manifest.update(td, destTd);
+    manifest.save();
+    var plan = new Plan();
+    plan.add(page, new Status(UPDATED, PUBLIC, destPage));
+    assertEquals(plan, planFactory.diff(root, dest, null));
+  }
+
+  @Test
+  public void shouldOnlyDiffTheChangedPaths(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var a = Files.writeString(root.resolve("a.txt"), "a");
+    Files.writeString(root.resolve("b.txt"), "b");
+    Files.writeString(root.resolve(".hidden"), "hidden");
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var plan = new Plan();
+    plan.add(a, new Status(ADDED, PUBLIC, dest.resolve("a.txt")));
+    assertEquals(plan, planFactory.diff(root, dest, null, Set.of(a, root.resolve(".hidden")), new DocumentManager(root)));
+  }
+
+  @Test
+  public void shouldDiffTheContentOfACreatedDirectory(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var privateDest = Files.createDirectories(tmp.resolve("private"));
+    var dir = Files.createDirectories(root.resolve("dir"));
+    var file = Files.writeString(dir.resolve("file.txt"), "file");
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var plan = new Plan();
+    plan.add(dir, new Status(ADDED, PUBLIC, dest.resolve("dir")));
+    plan.add(dir, new Status(ADDED, PRIVATE, privateDest.resolve("dir")));
+    plan.add(file, new Status(ADDED, PUBLIC, dest.resolve("dir").resolve("file.txt")));
+    plan.add(file, new Status(ADDED, PRIVATE, privateDest.resolve("dir").resolve("file.txt")));
+    assertEquals(plan, planFactory.diff(root, dest, privateDest, Set.of(dir, file), new DocumentManager(root)));
+  }
+
+  @Test
+  public void shouldRemoveTheContentOfARemovedDirectory(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var destDir = Files.createDirectories(dest.resolve("dir"));
+    var destFile = Files.writeString(destDir.resolve("file.txt"), "file");
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var dir = root.resolve("dir");
+    var plan = new Plan();
+    plan.add(destDir, new Status(REMOVED, PUBLIC, destDir));
+    plan.add(destFile, new Status(REMOVED, PUBLIC, destFile));
+    assertEquals(plan, planFactory.diff(root, dest, null, Set.of(dir, dir.resolve("file.txt")), new DocumentManager(root)));
+  }
+
+  @Test
+  public void shouldUpdateThePagesThatDependOnAChangedPath(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var page = Files.writeString(root.resolve("a.txt"), "page");
+    var td = Files.writeString(root.resolve("td.xumlv"), "<td><title>TD</title></td>");
+    var destPage = Files.copy(page, dest.resolve("a.txt"));
+    var destTd = Files.copy(td, dest.resolve("td.html"));
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var manifest = planFactory.diff(root, dest, null).manifest(PUBLIC).orElseThrow();
+    manifest.update(page, destPage, Set.of(new Dependency(Dependency.Kind.TITLE, td)), new DocumentManager(root));
+    manifest.update(td, destTd);
+    manifest.save();
+
+    Files.writeString(td, "<td><title>Another TD</title></td>");
+    var plan = new Plan();
+    plan.add(td, new Status(UPDATED, PUBLIC, destTd));
+    plan.add(page, new Status(UPDATED, PUBLIC, destPage));
+    assertEquals(plan, planFactory.diff(root, dest, null, Set.of(td), new DocumentManager(root)));
+  }
+
+  @Test
+  public void shouldIndexTheDependentsOfAManifestKeptInMemory(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var page = Files.writeString(root.resolve("a.txt"), "page");
+    var td = Files.writeString(root.resolve("td.xumlv"), "<td><title>TD</title></td>");
+    var destPage = Files.copy(page, dest.resolve("a.txt"));
+    var destTd = Files.copy(td, dest.resolve("td.html"));
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+    var manager = new DocumentManager(root);
+
+    var manifest = Manifest.load(dest, root);
+    manifest.update(page, destPage, Set.of(new Dependency(Dependency.Kind.TITLE, td)), manager);
+    manifest.update(td, destTd);
+    assertEquals(Map.of(page, destPage), manifest.dependents(Set.of(root.resolve("x/../td.xumlv"))));
+
+    Files.writeString(td, "<td><title>Another TD</title></td>");
+    manager.invalidate(td);
+    var plan = new Plan();
+    plan.add(td, new Status(UPDATED, PUBLIC, destTd));
+    plan.add(page, new Status(UPDATED, PUBLIC, destPage));
+    assertEquals(plan, planFactory.diff(root, manifest, null, Set.of(td), manager));
+
+    // the page does not depend on the document anymore
+    manifest.update(page, destPage, Set.of(), manager);
+    assertEquals(Map.of(), manifest.dependents(Set.of(td)));
+    manifest.update(page, destPage, Set.of(new Dependency(Dependency.Kind.TITLE, td)), manager);
+    manifest.remove(destPage);
+    assertEquals(Map.of(), manifest.dependents(Set.of(td)));
+  }
+
+  @Test
+  public void shouldKeepAManifestUpToDateWhenThePathsAreSpelledDifferently(@TempDir Path tmp) throws IOException {
+    var root = Files.createDirectories(tmp.resolve("root"));
+    var dest = Files.createDirectories(tmp.resolve("dest"));
+    var template = Files.writeString(tmp.resolve("template.html"), "<html/>");
+    var page = Files.writeString(root.resolve("a.txt"), "page");
+    var td = Files.writeString(root.resolve("td.xumlv"), "<td><title>TD</title></td>");
+    var destPage = Files.copy(page, dest.resolve("a.txt"));
+    var destTd = Files.copy(td, dest.resolve("td.html"));
+    var planFactory = new PlanFactory(PlanTest::mapping, false);
+
+    var manifest = Manifest.load(dest, root);
+    var dependencies = Set.of(new Dependency(Dependency.Kind.TITLE, td), new Dependency(Dependency.Kind.CONTENT, template));
+    manifest.update(page, destPage, dependencies, new DocumentManager(root));
+    manifest.update(td, destTd);
+    manifest.save();
+    var text = Files.readString(dest.resolve(Manifest.FILENAME));
+    assertAll(
+        () -> assertTrue(text.contains("\ttd.xumlv\n")),
+        () -> assertTrue(text.contains("\t" + template.toAbsolutePath().normalize() + "\n")),
+        () -> assertFalse(text.contains(root.toString()))
+    );
+
+    var otherRoot = tmp.resolve("dest").resolve("..").resolve("root");
+    var otherManifest = Manifest.load(dest, otherRoot);
+    var manager = new DocumentManager(otherRoot);
+    assertAll(
+        () -> assertTrue(otherManifest.isUpToDate(otherRoot.resolve("a.txt"), destPage, manager)),
+        () -> assertEquals(new Plan(), planFactory.diff(otherRoot, dest, null, manager))
+    );
+  }
+}